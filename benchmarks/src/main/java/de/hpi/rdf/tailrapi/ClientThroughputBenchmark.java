@@ -0,0 +1,108 @@
+package de.hpi.rdf.tailrapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second of the client against a local stub of the tailr API,
+ * which answers every timemap and delta request with a prepared payload.
+ * The stub runs in the benchmark JVM, so the numbers include its cost. It sends
+ * with TCP_NODELAY, otherwise the split header and body writes of the JDK server
+ * hit the delayed ACK and every request takes about 40ms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class ClientThroughputBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private final Repository repo = new Repository("bench", "repo");
+
+    private HttpServer server;
+
+    private ConnectionPool pool;
+
+    private TailrClient client;
+
+    private Memento memento;
+
+    private static void send(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, URISyntaxException {
+        final byte[] timemap = Payloads.timemapJson(size);
+        final byte[] delta = Payloads.deltaJson(size);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 128);
+        server.createContext("/api/", exchange -> {
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null && query.contains("timemap=true")) {
+                send(exchange, timemap);
+            } else if (query != null && query.contains("delta=true")) {
+                send(exchange, delta);
+            } else {
+                exchange.getRequestBody().close();
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(8, new DaemonThreadFactory("bench-stub")));
+        server.start();
+
+        pool = new ConnectionPool();
+        client = TailrClient.builder("http://localhost:" + server.getAddress().getPort() + "/")
+                .user("bench").connectionPool(pool).build();
+        memento = new Memento(repo, "http://example.org", "2016-06-01T10:00:00");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        pool.close();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public List<Memento> getMementos() throws IOException {
+        return client.getMementos(repo, "http://example.org");
+    }
+
+    @Benchmark
+    public Delta getDelta() throws IOException, URISyntaxException {
+        return client.getDelta(memento);
+    }
+}
@@ -0,0 +1,55 @@
+package de.hpi.rdf.tailrapi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a {@link Delta} into a {@link CompactDelta}, once with mostly new terms
+ * and once with the subjects and objects repeated as in deltas of entity descriptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CompactDeltaBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int triples;
+
+    private Delta delta;
+
+    private Delta repeated;
+
+    @Setup
+    public void setUp() {
+        delta = Payloads.delta(triples);
+        repeated = new Delta();
+        for (int i = 0; i < triples; i++) {
+            repeated.getAddedTriples().add("<http://dbpedia.org/resource/" + i / 20 + "> <http://dbpedia.org/ontology/"
+                    + i % 20 + "> <http://dbpedia.org/resource/" + i % 100 + "> .");
+        }
+    }
+
+    @Benchmark
+    public CompactDelta compact() {
+        return CompactDelta.of(delta);
+    }
+
+    @Benchmark
+    public CompactDelta compactRepeated() {
+        return CompactDelta.of(repeated);
+    }
+}
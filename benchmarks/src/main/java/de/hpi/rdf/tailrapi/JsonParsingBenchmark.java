@@ -0,0 +1,63 @@
+package de.hpi.rdf.tailrapi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the timemap and delta responses, as done by
+ * {@link TailrClient#getMementos(Repository, String)} and {@link TailrClient#getDelta(Memento)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonParsingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private byte[] timemap;
+
+    private byte[] delta;
+
+    @Setup
+    public void setUp() {
+        timemap = Payloads.timemapJson(size);
+        delta = Payloads.deltaJson(size);
+    }
+
+    @Benchmark
+    public void parseTimemap(final Blackhole bh) throws IOException {
+        TailrJson.parseTimemap(new ByteArrayInputStream(timemap), bh::consume);
+    }
+
+    @Benchmark
+    public Delta parseDelta() throws IOException {
+        Delta d = new Delta();
+        TailrJson.parseDelta(new ByteArrayInputStream(delta), TailrClient.collect(d));
+        return d;
+    }
+
+    @Benchmark
+    public CompactDelta parseCompactDelta() throws IOException {
+        CompactDelta d = new CompactDelta();
+        TailrJson.parseDelta(new ByteArrayInputStream(delta), d);
+        return d;
+    }
+}
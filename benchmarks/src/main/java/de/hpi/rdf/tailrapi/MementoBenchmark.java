@@ -0,0 +1,76 @@
+package de.hpi.rdf.tailrapi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of {@link Memento} instances from timemap datetimes,
+ * one by one and lazily through a {@link TimeMap}, and building their URIs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MementoBenchmark {
+
+    @Param({"1", "1000", "100000"})
+    public int size;
+
+    private final Repository repo = new Repository("user", "repo");
+
+    private final URI tailrUri = URI.create("http://tailr.s16a.org/");
+
+    private List<String> datetimes;
+
+    private TimeMap timeMap;
+
+    @Setup
+    public void setUp() throws IOException {
+        datetimes = Payloads.datetimes(size);
+        long[] seconds = new long[size];
+        for (int i = 0; i < size; i++) {
+            seconds[i] = DatetimeCodec.parse(datetimes.get(i));
+        }
+        timeMap = new TimeMap(null, repo, "http://example.org", seconds);
+    }
+
+    @Benchmark
+    public void parseDatetimes(Blackhole bh) {
+        for (String datetime : datetimes) {
+            bh.consume(new Memento(repo, "http://example.org", datetime));
+        }
+    }
+
+    @Benchmark
+    public void parseTimeMap(Blackhole bh) throws IOException {
+        long[] seconds = new long[size];
+        for (int i = 0; i < size; i++) {
+            seconds[i] = DatetimeCodec.parse(datetimes.get(i));
+        }
+        bh.consume(new TimeMap(null, repo, "http://example.org", seconds));
+    }
+
+    @Benchmark
+    public void mementoUris(Blackhole bh) throws IOException {
+        for (Memento m : timeMap) {
+            bh.consume(m.getMementoUrl(tailrUri));
+        }
+    }
+}
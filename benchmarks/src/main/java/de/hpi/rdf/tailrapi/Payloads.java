@@ -0,0 +1,86 @@
+package de.hpi.rdf.tailrapi;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the payloads of the benchmarks in the shape tailr sends them.
+ */
+final class Payloads {
+
+    private static final DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss").withZoneUTC();
+
+    private static final DateTime START = new DateTime(2016, 6, 1, 10, 0, DateTimeZone.UTC);
+
+    private Payloads() {
+    }
+
+    static List<String> datetimes(int count) {
+        List<String> datetimes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            datetimes.add(fmt.print(START.plusMinutes(i)));
+        }
+        return datetimes;
+    }
+
+    /* every tenth triple has a blank node */
+    static List<String> triples(int count, String prefix) {
+        List<String> triples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                triples.add("_:b" + i + " <http://filmontology.org/ontology/1.0/identifier> \"" + prefix + i
+                        + "\"^^<http://www.w3.org/2001/XMLSchema#int> .");
+            } else {
+                triples.add("<http://filmontology.org/resource/Project/" + i + "> <http://filmontology.org/ontology/1.0/"
+                        + (i % 7) + "> \"" + prefix + i + "\"^^<http://www.w3.org/2001/XMLSchema#long> .");
+            }
+        }
+        return triples;
+    }
+
+    static Delta delta(int count) {
+        Delta d = new Delta();
+        d.getAddedTriples().addAll(triples(count / 2, "added"));
+        d.getRemovedTriples().addAll(triples(count - count / 2, "removed"));
+        return d;
+    }
+
+    static byte[] timemapJson(int mementos) {
+        StringBuilder builder = new StringBuilder("{\"original_uri\": \"http://example.org\", "
+                + "\"timegate_uri\": \"http://localhost/api/user/repo?key=http%3A%2F%2Fexample.org\", \"mementos\": {\"list\": [");
+        int i = 0;
+        for (String datetime : datetimes(mementos)) {
+            if (i++ > 0) {
+                builder.append(", ");
+            }
+            builder.append("{\"datetime\": \"").append(datetime)
+                    .append("\", \"uri\": \"http://localhost/api/user/repo?key=http%3A%2F%2Fexample.org&datetime=")
+                    .append(datetime).append("\"}");
+        }
+        return builder.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] deltaJson(int triples) {
+        Delta d = delta(triples);
+        StringBuilder builder = new StringBuilder("{\"added\": [");
+        appendStrings(builder, d.getAddedTriples());
+        builder.append("], \"deleted\": [");
+        appendStrings(builder, d.getRemovedTriples());
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendStrings(StringBuilder builder, List<String> strings) {
+        for (int i = 0; i < strings.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append('"').append(strings.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+    }
+}
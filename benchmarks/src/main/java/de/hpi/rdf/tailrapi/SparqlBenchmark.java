@@ -0,0 +1,80 @@
+package de.hpi.rdf.tailrapi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SPARQL generation of a {@link Delta}, as string and streamed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SparqlBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int triples;
+
+    private Delta delta;
+
+    /* counts the characters, so the streamed update is not kept */
+    private static class CountingAppendable implements Appendable {
+
+        long length;
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            length += csq.length();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            length += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            length++;
+            return this;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        delta = Payloads.delta(triples);
+    }
+
+    @Benchmark
+    public String toSparql() {
+        return delta.toSparql("http://example.org/graph");
+    }
+
+    @Benchmark
+    public List<String> handleBlankNodes() {
+        return Delta.handleBlankNodes(delta.getRemovedTriples());
+    }
+
+    @Benchmark
+    public long writeSparql() throws IOException {
+        CountingAppendable out = new CountingAppendable();
+        delta.writeSparql(out, "http://example.org/graph");
+        return out.length;
+    }
+}
@@ -0,0 +1,88 @@
+package de.hpi.rdf.tailrapi;
+
+/**
+ * A concurrency limit adapting to the load of the server (AIMD).
+ * <p>
+ * Every request finished without a sign of overload raises the limit by <code>1/limit</code>,
+ * so the limit grows by about one per round of requests. A sign of overload, i.e. a slow
+ * response, a 429 or 5xx status or a failed connection, halves the limit. The limit is halved
+ * at most once per cool down, since the requests in flight at that moment report the same overload.
+ */
+class AdaptiveLimit {
+
+    private double limit;
+
+    private int min;
+
+    private int max;
+
+    private final long coolDownNanos;
+
+    private long decreased;
+
+    private int inFlight;
+
+    AdaptiveLimit(int min, int max, long coolDownMillis) {
+        this.coolDownNanos = coolDownMillis * 1000000;
+        this.decreased = System.nanoTime() - coolDownNanos;
+        setBounds(min, max);
+        this.limit = max;
+    }
+
+    synchronized void setBounds(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid concurrency bounds " + min + ".." + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, limit));
+        notifyAll();
+    }
+
+    /**
+     * Waits for a free slot.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Frees a slot and adapts the limit.
+     *
+     * @param overloaded whether the request showed an overload of the server
+     */
+    synchronized void release(boolean overloaded) {
+        inFlight--;
+        if (overloaded) {
+            long now = System.nanoTime();
+            if (now - decreased >= coolDownNanos) {
+                limit = Math.max(min, limit / 2);
+                decreased = now;
+            }
+        } else {
+            limit = Math.min(max, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    synchronized double getLimit() {
+        return limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getMin() {
+        return min;
+    }
+
+    synchronized int getMax() {
+        return max;
+    }
+}
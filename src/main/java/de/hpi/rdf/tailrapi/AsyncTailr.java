@@ -0,0 +1,56 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.jena.graph.Graph;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking companion of the {@link Tailr} interface.
+ * <p>
+ * Every method returns immediately with a {@link CompletableFuture}
+ * which is completed when the request to tailr is answered. Failures
+ * complete the future exceptionally with the same exceptions the
+ * blocking {@link Tailr} methods would throw.
+ */
+public interface AsyncTailr {
+
+    /**
+     * Gets all mementos stored under one key.
+     *
+     * @param repo the repository
+     * @param key  the key
+     * @return the future list of mementos
+     */
+    public CompletableFuture<List<Memento>> getMementos(Repository repo, String key);
+
+    /**
+     * Retrieves a {@link Delta} for a given {@link Memento}.
+     * The delta designates the difference between the given memento
+     * and the one before.
+     *
+     * @param mem a given memento
+     * @return the future delta between the given and the one before
+     */
+    public CompletableFuture<Delta> getDelta(Memento mem);
+
+    /**
+     * Creates a new {@link Memento} version and
+     * stores the given content to tailr. The Memento is inserted
+     * as last version and the corresponding delta is returned.
+     *
+     * @param repo    the memento repository
+     * @param key     the memento key
+     * @param content the storage content
+     * @return the future delta between the uploaded and previous version
+     */
+    public CompletableFuture<Delta> putMemento(Repository repo, String key, String content);
+
+    /**
+     * Resolves the content of a {@link Memento}.
+     *
+     * @param mem the memento
+     * @return the future graph stored under the memento
+     */
+    public CompletableFuture<Graph> resolve(Memento mem);
+}
@@ -0,0 +1,283 @@
+package de.hpi.rdf.tailrapi;
+
+import de.hpi.rdf.tailrapi.MetricsRecorder.Endpoint;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.LongStream;
+
+/**
+ * A non-blocking tailr client backed by an asynchronous http client.
+ * <p>
+ * It is a companion of a {@link TailrClient} and uses its base URI, user and token.
+ * The number of requests in flight is bounded; further requests are queued
+ * without blocking the calling thread. Responses are parsed on the common fork join pool
+ * so the io threads stay free for networking.
+ * <p>
+ * Requests get the timeouts of the {@link RequestExecutor} of the client and are reported
+ * to its {@link MetricsRecorder}. The async client keeps its own connections though,
+ * the connection pool, retries and rate limits of the executor do not apply.
+ */
+public class AsyncTailrClient implements AsyncTailr, Closeable {
+
+    private static Logger L = LogManager.getLogger(AsyncTailrClient.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final TailrClient client;
+
+    private final RequestExecutor executor;
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    private final InFlightLimiter limiter;
+
+    /**
+     * Instantiates a new async client with the default number of requests in flight.
+     *
+     * @param client the blocking client to take the configuration from
+     */
+    public AsyncTailrClient(TailrClient client) {
+        this(client, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Instantiates a new async client.
+     *
+     * @param client      the blocking client to take the configuration from
+     * @param maxInFlight the maximum number of concurrent requests
+     */
+    public AsyncTailrClient(TailrClient client, int maxInFlight) {
+        this.client = client;
+        this.executor = client.getRequestExecutor();
+        this.limiter = new InFlightLimiter(maxInFlight);
+        this.httpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(maxInFlight)
+                .setMaxConnPerRoute(maxInFlight)
+                .build();
+        this.httpClient.start();
+    }
+
+    public TailrClient getClient() {
+        return client;
+    }
+
+    public int getInFlight() {
+        return limiter.getInFlight();
+    }
+
+    public int getPending() {
+        return limiter.getPending();
+    }
+
+    @Override
+    public CompletableFuture<List<Memento>> getMementos(final Repository repo, final String key) {
+        HttpGet get;
+        TimeMap empty;
+        try {
+            get = client.getGet(client.getKeyUri(repo, key) + "&timemap=true");
+            // a key without versions has an empty timemap
+            empty = new TimeMap(client, repo, key, new long[0]);
+        } catch (IOException e) {
+            return failed(e);
+        }
+
+        return executeForJson(get, Endpoint.TIMEMAP, empty, in -> {
+            LongStream.Builder datetimes = LongStream.builder();
+            TailrJson.parseTimemapSeconds(in, datetimes);
+            return new TimeMap(client, repo, key, datetimes.build().toArray());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Delta> getDelta(final Memento mem) {
+        HttpGet get;
+        final MementoCache cache = client.getCache();
+        final boolean cacheable = client.isCacheable(cache, mem);
+        try {
+            Delta cached = cacheable ? cache.getDelta(mem) : null;
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            get = client.getGet(mem.getMementoUrl(client.getTailrUri()) + "&delta=true");
+        } catch (Exception e) {
+            return failed(e);
+        }
+
+        return executeForJson(get, Endpoint.DELTA, null, in -> {
+            Delta d = new Delta();
+            TailrJson.parseDelta(in, TailrClient.collect(d));
+            if (cacheable) {
+                cache.putDelta(mem, d);
+            }
+            return d;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Delta> putMemento(final Repository repo, final String key, String content) {
+        HttpPut put;
+        try {
+            put = client.getAuthPut(client.getKeyUri(repo, key));
+        } catch (IOException e) {
+            return failed(e);
+        }
+        put.setEntity(new ByteArrayEntity(content.getBytes(StandardCharsets.UTF_8)));
+
+        return execute(put, Endpoint.PUT).thenCompose(response -> {
+            StatusLine status = response.getStatusLine();
+            if (status.getStatusCode() != HttpStatus.SC_OK) {
+                return failed(new IOException("Failed to put a new memento version. " + status));
+            }
+            return getMementos(repo, key).thenCompose(mementos -> {
+                if (mementos.isEmpty()) {
+                    return failed(new IOException("No memento found."));
+                }
+                return getDelta(mementos.get(0));
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Graph> resolve(final Memento mem) {
+        HttpGet get;
+        final MementoCache cache = client.getCache();
+        final boolean cacheable = client.isCacheable(cache, mem);
+        try {
+            byte[] cached = cacheable ? cache.getContent(mem) : null;
+            if (cached != null) {
+                return CompletableFuture.completedFuture(TailrClient.readGraph(new ByteArrayInputStream(cached)));
+            }
+            get = client.getGet(mem.getMementoUri(client.getTailrUri()).toASCIIString());
+        } catch (Exception e) {
+            return failed(e);
+        }
+        get.addHeader("Accept", "application/n-triples");
+
+        return execute(get, Endpoint.RESOLVE).thenApplyAsync(response -> {
+            StatusLine status = response.getStatusLine();
+            if (status.getStatusCode() >= 400) {
+                throw new HttpException(status.getStatusCode(), status.toString(), null);
+            }
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return GraphFactory.createDefaultGraph();
+            }
+            try (InputStream in = entity.getContent()) {
+                if (!cacheable) {
+                    return TailrClient.readGraph(in);
+                }
+                byte[] content = TailrClient.toByteArray(in);
+                cache.putContent(mem, content);
+                return TailrClient.readGraph(new ByteArrayInputStream(content));
+            } catch (IOException e) {
+                throw new CompletionException(new IOException("Failed to resolve memento.", e));
+            }
+        });
+    }
+
+    /**
+     * Shuts down the async http client. Requests still in flight fail.
+     */
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            L.warn("Failed to close the async http client.", e);
+        }
+    }
+
+    /* read a json response, notFound is the answer to a 404 if it is not null */
+    private <T> CompletableFuture<T> executeForJson(HttpUriRequest request, Endpoint endpoint, final T notFound,
+                                                    ContentReader<T> reader) {
+        request.addHeader("Accept", "application/json");
+
+        return execute(request, endpoint).thenApplyAsync(response -> {
+            StatusLine status = response.getStatusLine();
+            if (notFound != null && status.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                return notFound;
+            }
+            if (status.getStatusCode() < 200 || status.getStatusCode() >= 300) {
+                throw new CompletionException(new IOException("Request failed. " + status));
+            }
+            try (InputStream in = response.getEntity().getContent()) {
+                return reader.read(in);
+            } catch (IOException e) {
+                L.error("Failed reading JSON response.", e);
+                throw new CompletionException(new IOException("Failed reading JSON response.", e));
+            }
+        });
+    }
+
+    /* run a request as soon as the limiter has a free slot, with the timeouts and metrics of the executor */
+    private CompletableFuture<HttpResponse> execute(final HttpUriRequest request, final Endpoint endpoint) {
+        executor.configure(request);
+        return limiter.submit(() -> {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            final MetricsRecorder metrics = executor.getMetrics();
+            if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+                long sent = ((HttpEntityEnclosingRequest) request).getEntity().getContentLength();
+                if (sent > 0) {
+                    metrics.bytesSent(endpoint, sent);
+                }
+            }
+            final long start = System.nanoTime();
+            L.debug("Requesting: {} {}", request.getMethod(), request.getURI());
+            httpClient.execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    L.debug("Response state: {}", response.getStatusLine());
+                    metrics.request(endpoint, response.getStatusLine().getStatusCode(), System.nanoTime() - start);
+                    HttpEntity entity = response.getEntity();
+                    if (entity != null && entity.getContentLength() > 0) {
+                        metrics.bytesReceived(endpoint, entity.getContentLength());
+                    }
+                    future.complete(response);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    L.error("HTTP request failed. Reason: ", e);
+                    metrics.failure(endpoint);
+                    future.completeExceptionally(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel(false);
+                }
+            });
+            return future;
+        });
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+}
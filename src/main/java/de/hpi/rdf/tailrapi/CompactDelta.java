@@ -0,0 +1,304 @@
+package de.hpi.rdf.tailrapi;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A memory-saving representation of a {@link Delta}.
+ * <p>
+ * Every triple line in the canonical form <code>s p o .</code> is split into subject, predicate
+ * and object. The terms are stored once in a term table and each triple is kept as three
+ * term ids in a primitive array. Since deltas are dominated by few subjects, predicates and
+ * objects, this is much smaller than one string per line. The term table is indexed by an
+ * open addressing table of ids, so a term already known is found without copying it out of the line.
+ * Lines in any other form, e.g. with other whitespace, are stored as a whole.
+ * <p>
+ * The conversion is lossless: {@link #toDelta()} returns the lines in their original
+ * form and order, and equality and hash code are the same as for the converted {@link Delta}.
+ * A compact delta can be filled while a delta is read by passing it as
+ * {@link DeltaHandler} to {@link TailrClient#getDelta(Memento, DeltaHandler)}.
+ */
+public class CompactDelta implements DeltaHandler {
+
+    /* marks a triple stored as a whole line in its first id */
+    private static final int RAW = -1;
+
+    /* the separator of object and terminating dot in a canonical line */
+    private static final String END = " .";
+
+    private String[] terms = new String[64];
+
+    private int termCount;
+
+    /* open addressing over the terms, a slot holds the term id + 1 or 0 if it is free */
+    private int[] slots = new int[128];
+
+    private final Triples added = new Triples();
+
+    private final Triples removed = new Triples();
+
+    /**
+     * Converts a delta.
+     *
+     * @param d the delta
+     * @return the compact delta with the same triples
+     */
+    public static CompactDelta of(Delta d) {
+        CompactDelta compact = new CompactDelta();
+        for (String triple : d.getAddedTriples()) {
+            compact.added(triple);
+        }
+        for (String triple : d.getRemovedTriples()) {
+            compact.removed(triple);
+        }
+        return compact;
+    }
+
+    @Override
+    public void added(String triple) {
+        encode(triple, added);
+    }
+
+    @Override
+    public void removed(String triple) {
+        encode(triple, removed);
+    }
+
+    /**
+     * Converts back into a delta.
+     *
+     * @return the delta with the same triples
+     */
+    public Delta toDelta() {
+        Delta d = new Delta();
+        d.getAddedTriples().addAll(getAddedTriples());
+        d.getRemovedTriples().addAll(getRemovedTriples());
+        return d;
+    }
+
+    /**
+     * Gets a read-only view of the added triples. Lines are rebuilt on access.
+     *
+     * @return the added triples
+     */
+    public List<String> getAddedTriples() {
+        return view(added);
+    }
+
+    /**
+     * Gets a read-only view of the removed triples. Lines are rebuilt on access.
+     *
+     * @return the removed triples
+     */
+    public List<String> getRemovedTriples() {
+        return view(removed);
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public boolean isEmpty() {
+        return added.size == 0 && removed.size == 0;
+    }
+
+    /* split a canonical line into its terms, so the terms always rebuild the line */
+    private void encode(String triple, Triples target) {
+        int s = NTriplesDiff.termEnd(triple, 0);
+        int p = s > 0 && separated(triple, s) ? NTriplesDiff.termEnd(triple, s + 1) : -1;
+        int o = p > s + 1 && separated(triple, p) ? NTriplesDiff.termEnd(triple, p + 1) : -1;
+        if (o > p + 1 && triple.length() == o + END.length() && triple.startsWith(END, o)) {
+            target.add(id(triple, 0, s), id(triple, s + 1, p), id(triple, p + 1, o));
+        } else {
+            target.add(RAW, id(triple, 0, triple.length()), RAW);
+        }
+    }
+
+    private static boolean separated(String triple, int i) {
+        return i < triple.length() && triple.charAt(i) == ' ';
+    }
+
+    /* the id of a part of a line, which is only copied if it is a new term */
+    private int id(String line, int from, int to) {
+        int length = to - from;
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        int mask = slots.length - 1;
+        int i = spread(hash) & mask;
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            String term = terms[slot - 1];
+            if (term.hashCode() == hash && term.length() == length && term.regionMatches(0, line, from, length)) {
+                return slot - 1;
+            }
+        }
+
+        if (termCount == terms.length) {
+            terms = Arrays.copyOf(terms, termCount * 2);
+        }
+        terms[termCount] = length == line.length() ? line : line.substring(from, to);
+        slots[i] = ++termCount;
+        if (2 * termCount > slots.length) {
+            rehash();
+        }
+        return termCount - 1;
+    }
+
+    /* keep at most half of the slots used */
+    private void rehash() {
+        int[] grown = new int[slots.length * 2];
+        int mask = grown.length - 1;
+        for (int id = 0; id < termCount; id++) {
+            int i = spread(terms[id].hashCode()) & mask;
+            while (grown[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            grown[i] = id + 1;
+        }
+        slots = grown;
+    }
+
+    /* mix the high bits into the slot index, as HashMap does */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private String line(Triples triples, int i) {
+        int[] t = triples.ids;
+        int s = t[3 * i];
+        if (s == RAW) {
+            return terms[t[3 * i + 1]];
+        }
+        String subject = terms[s];
+        String predicate = terms[t[3 * i + 1]];
+        String object = terms[t[3 * i + 2]];
+        return new StringBuilder(subject.length() + predicate.length() + object.length() + 2 + END.length())
+                .append(subject).append(' ').append(predicate).append(' ').append(object).append(END).toString();
+    }
+
+    /* String.hashCode of the rebuilt line, computed from the parts */
+    private int lineHash(Triples triples, int i) {
+        int[] t = triples.ids;
+        int s = t[3 * i];
+        if (s == RAW) {
+            return terms[t[3 * i + 1]].hashCode();
+        }
+        String predicate = terms[t[3 * i + 1]];
+        String object = terms[t[3 * i + 2]];
+        int h = terms[s].hashCode();
+        h = h * 31 + ' ';
+        h = h * pow31(predicate.length()) + predicate.hashCode();
+        h = h * 31 + ' ';
+        h = h * pow31(object.length()) + object.hashCode();
+        h = h * pow31(END.length()) + END.hashCode();
+        return h;
+    }
+
+    private static int pow31(int n) {
+        int result = 1;
+        int base = 31;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            n >>= 1;
+        }
+        return result;
+    }
+
+    /* same as List.hashCode of the rebuilt lines */
+    private int listHash(Triples triples) {
+        int h = 1;
+        for (int i = 0; i < triples.size; i++) {
+            h = 31 * h + lineHash(triples, i);
+        }
+        return h;
+    }
+
+    private boolean tripleEquals(Triples a, int i, CompactDelta other, Triples b, int j) {
+        int[] x = a.ids;
+        int[] y = b.ids;
+        if (x[3 * i] != RAW && y[3 * j] != RAW) {
+            for (int k = 0; k < 3; k++) {
+                if (!terms[x[3 * i + k]].equals(other.terms[y[3 * j + k]])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return line(a, i).equals(other.line(b, j));
+    }
+
+    private boolean listEquals(Triples a, CompactDelta other, Triples b) {
+        if (a.size != b.size) return false;
+        for (int i = 0; i < a.size; i++) {
+            if (!tripleEquals(a, i, other, b, i)) return false;
+        }
+        return true;
+    }
+
+    private List<String> view(final Triples triples) {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= triples.size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + triples.size);
+                }
+                return line(triples, index);
+            }
+
+            @Override
+            public int size() {
+                return triples.size;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CompactDelta delta = (CompactDelta) o;
+
+        if (!listEquals(added, delta, delta.added)) return false;
+        return listEquals(removed, delta, delta.removed);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = listHash(added);
+        result = 31 * result + listHash(removed);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactDelta{\n" +
+                "addedTriples=" + getAddedTriples() +
+                "\nremovedTriples=" + getRemovedTriples() +
+                "\nterms=" + termCount +
+                '}';
+    }
+
+    /* three term ids per triple in one growing array */
+    private static class Triples {
+
+        private int[] ids = new int[48];
+
+        private int size;
+
+        void add(int subject, int predicate, int rest) {
+            if (3 * size + 3 > ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[3 * size] = subject;
+            ids[3 * size + 1] = predicate;
+            ids[3 * size + 2] = rest;
+            size++;
+        }
+    }
+}
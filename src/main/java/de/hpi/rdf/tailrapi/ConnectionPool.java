@@ -0,0 +1,192 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived pool of HTTP connections to tailr.
+ * <p>
+ * The pool wraps a {@link PoolingHttpClientConnectionManager} and a single
+ * {@link CloseableHttpClient} built on top of it. Connections are kept alive
+ * between requests and a background thread evicts expired and idle connections.
+ * <p>
+ * The {@link TailrClient} and the {@link Memento}s share the {@link #getDefault()} pool
+ * unless a client is created with its own pool. Responses taken from the
+ * client have to be consumed or closed, otherwise the connection is not returned.
+ */
+public class ConnectionPool implements Closeable {
+
+    private static Logger L = LogManager.getLogger(ConnectionPool.class);
+
+    public static final int DEFAULT_MAX_TOTAL = 100;
+
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    private static ConnectionPool defaultPool;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final ScheduledExecutorService evictor;
+
+    private final int maxTotal;
+
+    private final int maxPerRoute;
+
+    private final long keepAliveMillis;
+
+    private final long idleTimeoutMillis;
+
+    /**
+     * Instantiates a new pool with the default limits.
+     */
+    public ConnectionPool() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Instantiates a new pool.
+     *
+     * @param maxTotal          the maximum number of open connections
+     * @param maxPerRoute       the maximum number of open connections per host
+     * @param keepAliveMillis   how long a connection is kept alive if the server sends no keep-alive header
+     * @param idleTimeoutMillis after which time an idle connection is evicted
+     */
+    public ConnectionPool(int maxTotal, int maxPerRoute, long keepAliveMillis, long idleTimeoutMillis) {
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+        this.keepAliveMillis = keepAliveMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(new KeepAliveStrategy(keepAliveMillis))
+                .build();
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("tailr-connection-evictor"));
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(ConnectionPool.this.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the pool shared by all clients which are not configured otherwise.
+     *
+     * @return the default pool
+     */
+    public static synchronized ConnectionPool getDefault() {
+        if (defaultPool == null) {
+            defaultPool = new ConnectionPool();
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Replaces the default pool, e.g. to change its limits.
+     * The previous default pool is not closed, as clients and mementos created before may
+     * still use it. It can be closed by the caller once they are done.
+     *
+     * @param pool the new default pool
+     * @return the previous default pool or null if none was created yet
+     */
+    public static synchronized ConnectionPool setDefault(ConnectionPool pool) {
+        ConnectionPool previous = defaultPool;
+        defaultPool = pool;
+        return previous;
+    }
+
+    /**
+     * Gets the http client backed by this pool.
+     * The client must not be closed by the caller.
+     *
+     * @return the pooled http client
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public int getLeased() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getAvailable() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    public int getPending() {
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    /**
+     * Shuts down the eviction thread and closes all connections.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            L.warn("Failed to close the http client.", e);
+        }
+        connectionManager.shutdown();
+    }
+
+    /* use the keep-alive header of the server or fall back to the configured duration */
+    private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+        private final long keepAliveMillis;
+
+        KeepAliveStrategy(long keepAliveMillis) {
+            this.keepAliveMillis = keepAliveMillis;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAliveMillis;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package de.hpi.rdf.tailrapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads something from the body of a response.
+ *
+ * @param <T> the result type
+ */
+interface ContentReader<T> {
+
+    T read(InputStream in) throws IOException;
+}
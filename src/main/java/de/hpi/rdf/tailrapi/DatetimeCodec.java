@@ -0,0 +1,206 @@
+package de.hpi.rdf.tailrapi;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDateTime;
+import org.joda.time.chrono.ISOChronology;
+
+import java.nio.CharBuffer;
+
+/**
+ * Parses and prints the two fixed datetime formats of tailr without a formatter,
+ * <code>yyyy-MM-dd'T'HH:mm:ss</code> in timemaps and <code>yyyy-MM-dd-HH:mm:ss</code> in memento URIs.
+ * <p>
+ * tailr prints its datetimes without a zone. They are encoded as the seconds between
+ * 1970-01-01T00:00:00 and the printed fields, as if both were in the same zone,
+ * so a datetime is printed exactly as it was read. Only {@link #toDateTime(long)}
+ * places the fields into the default zone, as parsing with Joda did before.
+ */
+final class DatetimeCodec {
+
+    /**
+     * The separator of date and time in timemaps.
+     */
+    static final char TIMEMAP = 'T';
+
+    /**
+     * The separator of date and time in the query of memento URIs.
+     */
+    static final char QUERY = '-';
+
+    static final int LENGTH = 19;
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /* days from 0000-03-01 to 1970-01-01 */
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    private static final int DAYS_PER_ERA = 146097;
+
+    private DatetimeCodec() {
+    }
+
+    /**
+     * Parses a datetime in one of the two formats.
+     *
+     * @param s the datetime
+     * @return the seconds since 1970-01-01T00:00:00
+     * @throws IllegalArgumentException if the datetime is malformed
+     */
+    static long parse(CharSequence s) {
+        if (s.length() != LENGTH || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || (s.charAt(10) != TIMEMAP && s.charAt(10) != QUERY) || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            throw new IllegalArgumentException("Invalid datetime: \"" + s + "\"");
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            throw new IllegalArgumentException("Invalid datetime: \"" + s + "\"");
+        }
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Parses a datetime from a character buffer, e.g. that of a json parser, without creating a string.
+     *
+     * @param chars  the buffer
+     * @param offset the start of the datetime
+     * @param length the length of the datetime
+     * @return the seconds since 1970-01-01T00:00:00
+     * @throws IllegalArgumentException if the datetime is malformed
+     */
+    static long parse(char[] chars, int offset, int length) {
+        return parse(CharBuffer.wrap(chars, offset, length));
+    }
+
+    /**
+     * Appends a datetime.
+     *
+     * @param builder   the receiver
+     * @param seconds   the seconds since 1970-01-01T00:00:00
+     * @param separator {@link #TIMEMAP} or {@link #QUERY}
+     * @return the builder
+     */
+    static StringBuilder append(StringBuilder builder, long seconds, char separator) {
+        return append(builder, seconds, true, separator);
+    }
+
+    /**
+     * Appends a datetime without separators as <code>yyyyMMddHHmmss</code>, e.g. for file names.
+     *
+     * @param builder the receiver
+     * @param seconds the seconds since 1970-01-01T00:00:00
+     * @return the builder
+     */
+    static StringBuilder appendDigits(StringBuilder builder, long seconds) {
+        return append(builder, seconds, false, ' ');
+    }
+
+    private static StringBuilder append(StringBuilder builder, long seconds, boolean separated, char separator) {
+        long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        int time = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+
+        /* civil date of an epoch day, see http://howardhinnant.github.io/date_algorithms.html */
+        long z = days + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, DAYS_PER_ERA);
+        int doe = (int) (z - era * DAYS_PER_ERA);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = era * 400 + yoe + (month <= 2 ? 1 : 0);
+
+        pad(builder, year, 4);
+        separate(builder, separated, '-');
+        pad(builder, month, 2);
+        separate(builder, separated, '-');
+        pad(builder, day, 2);
+        separate(builder, separated, separator);
+        pad(builder, time / 3600, 2);
+        separate(builder, separated, ':');
+        pad(builder, time / 60 % 60, 2);
+        separate(builder, separated, ':');
+        return pad(builder, time % 60, 2);
+    }
+
+    private static void separate(StringBuilder builder, boolean separated, char separator) {
+        if (separated) {
+            builder.append(separator);
+        }
+    }
+
+    /**
+     * Prints a datetime.
+     *
+     * @param seconds   the seconds since 1970-01-01T00:00:00
+     * @param separator {@link #TIMEMAP} or {@link #QUERY}
+     * @return the datetime
+     */
+    static String print(long seconds, char separator) {
+        return append(new StringBuilder(LENGTH), seconds, separator).toString();
+    }
+
+    /**
+     * Encodes the fields of a datetime in its own zone, as a Joda formatter prints them.
+     *
+     * @param dateTime the datetime
+     * @return the seconds since 1970-01-01T00:00:00
+     */
+    static long of(DateTime dateTime) {
+        long millis = dateTime.getMillis();
+        return Math.floorDiv(millis + dateTime.getZone().getOffset(millis), 1000);
+    }
+
+    /**
+     * Decodes a datetime into the default zone.
+     *
+     * @param seconds the seconds since 1970-01-01T00:00:00
+     * @return the datetime
+     */
+    static DateTime toDateTime(long seconds) {
+        return new LocalDateTime(seconds * 1000, ISOChronology.getInstanceUTC()).toDateTime();
+    }
+
+    /* days since 1970-01-01 of a proleptic gregorian date */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        int yoe = (int) (y - era * 400);
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * DAYS_PER_ERA + doe - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static int digits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Invalid datetime: \"" + s + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static StringBuilder pad(StringBuilder builder, long value, int width) {
+        for (long limit = 10; --width > 0; limit *= 10) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        return builder.append(value);
+    }
+}
@@ -1,7 +1,29 @@
 package de.hpi.rdf.tailrapi;
 
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.TransactionHandler;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * A {@link Delta} refers to the difference between two
@@ -13,16 +35,31 @@ import java.util.List;
  * <p>
  * It can convert itself into a SPARQL query for inserting or deleting data.
  * The used data corresponds to the added and removed triples.<br/>
- * An empty delta produces no queries which are empty strings.
+ * An empty delta produces no queries which are empty strings.<br/>
+ * For large deltas {@link #writeSparql(Appendable, String)} writes the update
+ * in size-bounded operations without building the whole query in memory.
+ * <p>
+ * It can also be applied to a local graph or dataset directly
+ * without the detour over SPARQL.
  * <p>
  * Created by Henrik Jürges (juerges.henrik@gmail.com)
  */
 public class Delta {
 
+    /**
+     * The default number of triples within one generated update operation.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
     private List<String> addedTriples;
 
     private List<String> removedTriples;
 
+    /* first and last change of a triple while composing */
+    private static final byte ADDED_FIRST = 1;
+
+    private static final byte ADDED_LAST = 2;
+
     /**
      * Instantiates a new Delta.
      */
@@ -49,6 +86,62 @@ public class Delta {
         return removedTriples;
     }
 
+    /* a delta with copies of the triple lists */
+    Delta copy() {
+        Delta d = new Delta();
+        d.addedTriples.addAll(addedTriples);
+        d.removedTriples.addAll(removedTriples);
+        return d;
+    }
+
+    /**
+     * Checks whether the delta changes nothing.
+     *
+     * @return true if no triple is added or removed
+     */
+    public boolean isEmpty() {
+        return addedTriples.isEmpty() && removedTriples.isEmpty();
+    }
+
+    /**
+     * Squashes consecutive deltas into one net delta.
+     * <p>
+     * The deltas have to be given in the order of their mementos. A triple
+     * is added by the result only if it was missing before the first delta and is present after the last one,
+     * it is removed only if it was present before and is missing afterwards.
+     * Triples added and removed again in between do not appear in the result, so the result
+     * is the minimal update from the version before the first delta to the version of the last one.
+     * Triples are compared as lines, blank nodes are equal only if their labels are.
+     *
+     * @param deltas the consecutive deltas, oldest first
+     * @return the net delta
+     */
+    public static Delta compose(Delta... deltas) {
+        Map<String, Byte> changes = new LinkedHashMap<>();
+        for (Delta d : deltas) {
+            /* within one delta the removal happens before the insertion */
+            for (String triple : d.removedTriples) {
+                Byte change = changes.get(triple);
+                changes.put(triple, (byte) (change == null ? 0 : change & ADDED_FIRST));
+            }
+            for (String triple : d.addedTriples) {
+                Byte change = changes.get(triple);
+                changes.put(triple, (byte) ((change == null ? ADDED_FIRST : change & ADDED_FIRST) | ADDED_LAST));
+            }
+        }
+
+        Delta net = new Delta();
+        for (Map.Entry<String, Byte> e : changes.entrySet()) {
+            byte change = e.getValue();
+            if (change == (ADDED_FIRST | ADDED_LAST)) {
+                net.addedTriples.add(e.getKey());
+            } else if (change == 0) {
+                net.removedTriples.add(e.getKey());
+            }
+        }
+        return net;
+    }
+
     /**
      * Gets an insert query which is build of the triples
      * within the added triples list. Also it appends an empty where clause, to please jena.
@@ -91,9 +184,10 @@ public class Delta {
         StringBuilder builder = new StringBuilder();
         List<String> whereClause = new ArrayList<>();
 
-        for (String triple : handleBlankNodes(triples)) {
-            builder.append(triple.replace("_:", "?")).append(" ");
-            if (triple.contains("?")) whereClause.add(triple);
+        for (String triple : triples) {
+            String handled = triple.replace("_:", "?");
+            builder.append(handled).append(" ");
+            if (handled.contains("?")) whereClause.add(handled);
         }
         builder.append("} }\n");
 
@@ -166,8 +260,310 @@ public class Delta {
         if (!insert.isEmpty() && !delete.isEmpty()) {
             return delete + "; " + insert;
         } else {
-            return getDeleteQuery(graph) + " " + getInsertQuery(graph);
+            return delete + " " + insert;
+        }
+    }
+
+    /**
+     * Writes the delta as SPARQL update with the default chunk size.
+     *
+     * @param out   the target of the update request
+     * @param graph the graph for the query
+     * @throws IOException if the target fails
+     * @see #writeSparql(Appendable, String, int)
+     */
+    public void writeSparql(Appendable out, String graph) throws IOException {
+        writeSparql(out, graph, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Writes the delta as one SPARQL update request. The removed triples
+     * are deleted first, then the added triples are inserted.
+     * <p>
+     * Triples without blank nodes are written as <code>DELETE DATA</code> and
+     * <code>INSERT DATA</code> operations of at most <code>chunkSize</code> triples.
+     * Removed triples with blank nodes are deleted by a single pattern based operation
+     * which binds the blank nodes as variables in the where clause. Added triples with
+     * blank nodes are kept in a single operation, so their blank nodes stay the same.
+     * The operations are separated by ';'. Nothing is written for an empty delta.
+     *
+     * @param out       the target of the update request
+     * @param graph     the graph for the query
+     * @param chunkSize the maximum number of triples within a data operation
+     * @throws IOException if the target fails
+     */
+    public void writeSparql(final Appendable out, String graph, int chunkSize) throws IOException {
+        writeOperations(graph, chunkSize, new OperationWriter() {
+            private boolean first = true;
+
+            @Override
+            public Appendable next() throws IOException {
+                if (!first) {
+                    out.append(" ;\n");
+                }
+                first = false;
+                return out;
+            }
+
+            @Override
+            public void done() {
+            }
+        });
+    }
+
+    /**
+     * Generates the same operations as {@link #writeSparql(Appendable, String, int)},
+     * but hands each of them over as a separate update request. This allows sending
+     * a large delta in several requests of bounded size.
+     *
+     * @param graph     the graph for the query
+     * @param chunkSize the maximum number of triples within a data operation
+     * @param updates   receives the update requests in order
+     */
+    public void forEachSparqlUpdate(String graph, int chunkSize, final Consumer<String> updates) {
+        try {
+            writeOperations(graph, chunkSize, new OperationWriter() {
+                private StringBuilder builder;
+
+                @Override
+                public Appendable next() {
+                    done();
+                    builder = new StringBuilder();
+                    return builder;
+                }
+
+                @Override
+                public void done() {
+                    if (builder != null) {
+                        updates.accept(builder.toString());
+                        builder = null;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // a string builder does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Applies the delta to a graph. The removed triples are deleted first,
+     * then the added triples are inserted. If the graph supports transactions
+     * this happens within one transaction.
+     * <p>
+     * Removed triples with blank nodes are matched like the where clause of
+     * {@link #getDeleteQuery(String)}: the blank nodes are bound as variables
+     * of one pattern and every match of the pattern is removed.
+     *
+     * @param graph the graph to change
+     */
+    public void applyTo(Graph graph) {
+        TransactionHandler transaction = graph.getTransactionHandler();
+        if (!transaction.transactionsSupported()) {
+            apply(graph);
+            return;
+        }
+        transaction.begin();
+        try {
+            apply(graph);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            transaction.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the delta to a named graph of a dataset within a write transaction.
+     * If the dataset is already in a transaction, the delta becomes part of it.
+     *
+     * @param dataset   the dataset to change
+     * @param graphNode the name of the graph or <code>null</code> for the default graph
+     * @see #applyTo(Graph)
+     */
+    public void applyTo(DatasetGraph dataset, Node graphNode) {
+        if (!dataset.supportsTransactions() || dataset.isInTransaction()) {
+            apply(graphOf(dataset, graphNode));
+            return;
+        }
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            apply(graphOf(dataset, graphNode));
+            dataset.commit();
+        } finally {
+            dataset.end();
+        }
+    }
+
+    private static Graph graphOf(DatasetGraph dataset, Node graphNode) {
+        return graphNode == null ? dataset.getDefaultGraph() : dataset.getGraph(graphNode);
+    }
+
+    private void apply(Graph graph) {
+        List<Triple> ground = new ArrayList<>();
+        BasicPattern pattern = new BasicPattern();
+        for (Triple t : parseTriples(removedTriples)) {
+            if (t.getSubject().isBlank() || t.getObject().isBlank()) {
+                pattern.add(Triple.create(variable(t.getSubject()), t.getPredicate(), variable(t.getObject())));
+            } else {
+                ground.add(t);
+            }
+        }
+        GraphUtil.delete(graph, ground);
+        if (!pattern.isEmpty()) {
+            GraphUtil.delete(graph, matches(graph, pattern));
+        }
+        GraphUtil.add(graph, parseTriples(addedTriples));
+    }
+
+    /* all instances of the pattern, collected before the graph is changed */
+    private static List<Triple> matches(Graph graph, BasicPattern pattern) {
+        List<Triple> matches = new ArrayList<>();
+        QueryIterator bindings = Algebra.exec(new OpBGP(pattern), graph);
+        try {
+            while (bindings.hasNext()) {
+                Binding binding = bindings.nextBinding();
+                for (Triple t : pattern) {
+                    matches.add(Substitute.substitute(t, binding));
+                }
+            }
+        } finally {
+            bindings.close();
+        }
+        return matches;
+    }
+
+    private static Node variable(Node node) {
+        return node.isBlank() ? Var.alloc(node.getBlankNodeLabel()) : node;
+    }
+
+    /* parse the lines in one run, so equal blank node labels become the same node */
+    private static List<Triple> parseTriples(List<String> triples) {
+        final List<Triple> parsed = new ArrayList<>(triples.size());
+        if (triples.isEmpty()) {
+            return parsed;
+        }
+        RDFDataMgr.parse(new StreamRDFBase() {
+            @Override
+            public void triple(Triple triple) {
+                parsed.add(triple);
+            }
+        }, new LinesReader(triples), Lang.NTRIPLES);
+        return parsed;
+    }
+
+    /* receives the generated operations one after another */
+    private interface OperationWriter {
+
+        Appendable next() throws IOException;
+
+        void done() throws IOException;
+    }
+
+    private void writeOperations(String graph, int chunkSize, OperationWriter writer) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("A chunk has to contain at least one triple.");
+        }
+        writeData("DELETE DATA", removedTriples, graph, chunkSize, writer);
+
+        Appendable out = null;
+        for (String triple : removedTriples) {
+            String blank = blankNodeTriple(triple);
+            if (blank != null) {
+                if (out == null) {
+                    out = writer.next();
+                    out.append("DELETE { GRAPH <").append(graph).append("> {\n");
+                }
+                appendPattern(out, blank);
+            }
+        }
+        if (out != null) {
+            out.append("} }\nWHERE { GRAPH <").append(graph).append("> {\n");
+            for (String triple : removedTriples) {
+                String blank = blankNodeTriple(triple);
+                if (blank != null) {
+                    appendPattern(out, blank);
+                }
+            }
+            out.append("} }");
+        }
+
+        out = null;
+        for (String triple : addedTriples) {
+            if (blankNodeTriple(triple) != null) {
+                if (out == null) {
+                    out = writer.next();
+                    out.append("INSERT DATA { GRAPH <").append(graph).append("> {\n");
+                }
+                out.append(triple).append('\n');
+            }
+        }
+        if (out != null) {
+            out.append("} }");
+        }
+
+        writeData("INSERT DATA", addedTriples, graph, chunkSize, writer);
+        writer.done();
+    }
+
+    /* the triples without blank nodes in operations of at most chunk size triples */
+    private static void writeData(String operation, List<String> triples, String graph, int chunkSize,
+                                  OperationWriter writer) throws IOException {
+        Appendable out = null;
+        int count = 0;
+        for (String triple : triples) {
+            if (blankNodeTriple(triple) != null) {
+                continue;
+            }
+            if (out == null) {
+                out = writer.next();
+                out.append(operation).append(" { GRAPH <").append(graph).append("> {\n");
+            }
+            out.append(triple).append('\n');
+            if (++count == chunkSize) {
+                out.append("} }");
+                out = null;
+                count = 0;
+            }
+        }
+        if (out != null) {
+            out.append("} }");
+        }
+    }
+
+    /* the canonical triple if it has a blank node or null, only subject and object can be blank nodes, literals are not touched */
+    private static String blankNodeTriple(String triple) {
+        if (triple.indexOf("_:") < 0) {
+            return null;
+        }
+        String canonical = NTriplesDiff.canonicalize(triple);
+        if (canonical == null || !(canonical.startsWith("_:") || canonical.startsWith("_:", objectStart(canonical)))) {
+            return null;
+        }
+        return canonical;
+    }
+
+    /* in a canonical triple, whose terms are separated by single spaces */
+    private static int objectStart(String triple) {
+        int first = triple.indexOf(' ');
+        int second = first < 0 ? -1 : triple.indexOf(' ', first + 1);
+        return second < 0 ? triple.length() : second + 1;
+    }
+
+    /* write the canonical triple with its blank nodes as variables */
+    private static void appendPattern(Appendable out, String triple) throws IOException {
+        int object = objectStart(triple);
+        int from = 0;
+        if (triple.startsWith("_:")) {
+            out.append('?');
+            from = 2;
+        }
+        if (triple.startsWith("_:", object)) {
+            out.append(triple, from, object).append('?').append(triple, object + 2, triple.length());
+        } else {
+            out.append(triple, from, triple.length());
         }
+        out.append('\n');
     }
 
 }
@@ -0,0 +1,24 @@
+package de.hpi.rdf.tailrapi;
+
+/**
+ * Receives the triples of a {@link Delta} while it is read,
+ * without the whole delta being held in memory.
+ * <p>
+ * The triples are single lines in N-Triples syntax.
+ */
+public interface DeltaHandler {
+
+    /**
+     * Called for every triple added by the memento.
+     *
+     * @param triple the added triple
+     */
+    public void added(String triple);
+
+    /**
+     * Called for every triple removed by the memento.
+     *
+     * @param triple the removed triple
+     */
+    public void removed(String triple);
+}
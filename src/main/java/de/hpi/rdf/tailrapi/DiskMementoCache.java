@@ -0,0 +1,300 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A {@link MementoCache} persisting entries under a local directory.
+ * <p>
+ * Every key of a repository gets a sub directory named by a hash of user,
+ * repository and key. It holds one file per memento content and delta named by the datetime.
+ * Recently used entries are also kept in an in-memory LRU tier.
+ * Both tiers are bounded in size; the disk tier evicts the least recently used files
+ * once the limit is exceeded.
+ */
+public class DiskMementoCache implements MementoCache {
+
+    private static Logger L = LogManager.getLogger(DiskMementoCache.class);
+
+    private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+    private static final String CONTENT = ".nt";
+
+    private static final String DELTA = ".delta";
+
+    public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    private final Path directory;
+
+    private final long maxDiskBytes;
+
+    private final long maxMemoryBytes;
+
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long memoryBytes;
+
+    /**
+     * Instantiates a new cache with the default limits.
+     *
+     * @param directory the cache directory
+     * @throws IOException if the directory can not be created
+     */
+    public DiskMementoCache(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_DISK_BYTES, DEFAULT_MAX_MEMORY_BYTES);
+    }
+
+    /**
+     * Instantiates a new cache. Entries of a previous run found in
+     * the directory are reused.
+     *
+     * @param directory      the cache directory
+     * @param maxDiskBytes   the maximum size of all files in the directory
+     * @param maxMemoryBytes the maximum size of the in-memory tier
+     * @throws IOException if the directory can not be created
+     */
+    public DiskMementoCache(Path directory, long maxDiskBytes, long maxMemoryBytes) throws IOException {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(Files::isRegularFile).forEach(f -> diskBytes.addAndGet(f.toFile().length()));
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public byte[] getContent(Memento m) throws IOException {
+        return get(entry(m, CONTENT));
+    }
+
+    @Override
+    public void putContent(Memento m, byte[] content) throws IOException {
+        put(entry(m, CONTENT), content);
+    }
+
+    @Override
+    public Delta getDelta(Memento m) throws IOException {
+        byte[] data = get(entry(m, DELTA));
+        return data == null ? null : decodeDelta(data);
+    }
+
+    @Override
+    public void putDelta(Memento m, Delta d) throws IOException {
+        put(entry(m, DELTA), encodeDelta(d));
+    }
+
+    @Override
+    public void invalidate(Memento m) throws IOException {
+        String keyDir = keyDirectory(m);
+        String content = entry(m, CONTENT);
+
+        synchronized (this) {
+            Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, byte[]> e = it.next();
+                if (e.getKey().equals(content) || (e.getKey().startsWith(keyDir) && e.getKey().endsWith(DELTA))) {
+                    memoryBytes -= e.getValue().length;
+                    it.remove();
+                }
+            }
+        }
+
+        delete(directory.resolve(content));
+        Path dir = directory.resolve(keyDir);
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> deltas = Files.newDirectoryStream(dir, "*" + DELTA)) {
+                for (Path delta : deltas) {
+                    delete(delta);
+                }
+            }
+        }
+    }
+
+    /* look up the memory tier first, then the disk */
+    private byte[] get(String entry) throws IOException {
+        synchronized (this) {
+            byte[] data = memory.get(entry);
+            if (data != null) {
+                return data;
+            }
+        }
+
+        Path file = directory.resolve(entry);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        remember(entry, data);
+        return data;
+    }
+
+    private void put(String entry, byte[] data) throws IOException {
+        Path file = directory.resolve(entry);
+        Files.createDirectories(file.getParent());
+
+        /* write aside and move, so readers never see partial files */
+        Path tmp = Files.createTempFile(file.getParent(), "entry", ".tmp");
+        Files.write(tmp, data);
+        long replaced = Files.exists(file) ? Files.size(file) : 0;
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        diskBytes.addAndGet(data.length - replaced);
+
+        remember(entry, data);
+        if (diskBytes.get() > maxDiskBytes) {
+            evict(file);
+        }
+    }
+
+    private synchronized void remember(String entry, byte[] data) {
+        if (data.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] old = memory.put(entry, data);
+        memoryBytes += data.length - (old == null ? 0 : old.length);
+
+        Iterator<byte[]> eldest = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /* remove the least recently used files until the cache is below 90% of its limit */
+    private synchronized void evict(Path keep) throws IOException {
+        if (diskBytes.get() <= maxDiskBytes) {
+            return;
+        }
+
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.filter(f -> f.toString().endsWith(CONTENT) || f.toString().endsWith(DELTA)).forEach(files::add);
+        }
+        final Map<Path, FileTime> accessed = new LinkedHashMap<>();
+        for (Path f : files) {
+            try {
+                accessed.put(f, Files.readAttributes(f, BasicFileAttributes.class).lastModifiedTime());
+            } catch (NoSuchFileException e) {
+                // removed concurrently
+            }
+        }
+        files.retainAll(accessed.keySet());
+        files.sort((a, b) -> accessed.get(a).compareTo(accessed.get(b)));
+
+        long target = maxDiskBytes / 10 * 9;
+        for (Path f : files) {
+            if (diskBytes.get() <= target) {
+                break;
+            }
+            if (!f.equals(keep)) {
+                delete(f);
+            }
+        }
+        L.debug("Evicted cache entries, " + diskBytes.get() + " bytes left.");
+    }
+
+    private void delete(Path file) throws IOException {
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes.addAndGet(-size);
+            }
+        } catch (NoSuchFileException e) {
+            // already gone
+        }
+    }
+
+    private static String entry(Memento m, String type) {
+        String dir = keyDirectory(m);
+        StringBuilder entry = new StringBuilder(dir.length() + DatetimeCodec.LENGTH + type.length()).append(dir).append('/');
+        return DatetimeCodec.appendDigits(entry, m.getSeconds()).append(type).toString();
+    }
+
+    /* one directory per user, repository and key */
+    private static String keyDirectory(Memento m) {
+        Repository repo = m.getRepository();
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] hash = sha1.digest((repo.getUser() + "\n" + repo.getName() + "\n" + m.getKey()).getBytes(UTF8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available.", e);
+        }
+    }
+
+    /* one triple per line, prefixed with + for added and - for removed triples */
+    static byte[] encodeDelta(Delta d) {
+        StringBuilder builder = new StringBuilder();
+        for (String triple : d.getAddedTriples()) {
+            builder.append('+').append(triple).append('\n');
+        }
+        for (String triple : d.getRemovedTriples()) {
+            builder.append('-').append(triple).append('\n');
+        }
+        return builder.toString().getBytes(UTF8);
+    }
+
+    static Delta decodeDelta(byte[] data) throws IOException {
+        Delta d = new Delta();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), UTF8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.charAt(0) == '+') {
+                d.getAddedTriples().add(line.substring(1));
+            } else {
+                d.getRemovedTriples().add(line.substring(1));
+            }
+        }
+        return d;
+    }
+}
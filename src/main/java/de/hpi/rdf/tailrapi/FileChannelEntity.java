@@ -0,0 +1,69 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed-length entity sending a file through its {@link FileChannel}.
+ * <p>
+ * The file is transferred by the channel and never copied into the heap as a whole.
+ * The channel is opened for every transfer and always closed afterwards,
+ * so the entity is repeatable.
+ */
+class FileChannelEntity extends AbstractHttpEntity {
+
+    private final Path file;
+
+    private final long length;
+
+    FileChannelEntity(Path file) throws IOException {
+        this.file = file;
+        this.length = Files.size(file);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            /* the target must not be closed, it would close the connection stream */
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < length) {
+                long transferred = channel.transferTo(position, length - position, target);
+                if (transferred == 0 && position >= channel.size()) {
+                    throw new IOException("File " + file + " shrank to " + position + " of " + length + " bytes during the upload.");
+                }
+                position += transferred;
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,93 @@
+package de.hpi.rdf.tailrapi;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous operations running at the same time.
+ * <p>
+ * Tasks over the limit are queued and started as soon as a running
+ * task completes. No thread is blocked while waiting for a free slot.
+ */
+class InFlightLimiter {
+
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    InFlightLimiter(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one operation has to be allowed in flight.");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Starts the task if a slot is free, otherwise queues it.
+     *
+     * @param task the task starting an asynchronous operation
+     * @param <T>  the result type
+     * @return a future completed with the result of the operation
+     */
+    <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        pending.add(() -> {
+            CompletableFuture<T> operation;
+            try {
+                operation = task.get();
+            } catch (Throwable t) {
+                operation = new CompletableFuture<>();
+                operation.completeExceptionally(t);
+            }
+            operation.whenComplete((value, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        drain();
+
+        return result;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    int getPending() {
+        return pending.size();
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /* start queued tasks while slots are free */
+    private void drain() {
+        while (!pending.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable next = pending.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+            } else {
+                next.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package de.hpi.rdf.tailrapi;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link MetricsRecorder} keeping counters and latency histograms per endpoint
+ * and publishing them as attributes of an MBean, e.g. <code>Timemap.LatencyP99Millis</code>.
+ * <p>
+ * If an executor is watched, its connection pool and limits are published as well.
+ */
+public class JmxMetricsRecorder implements MetricsRecorder, DynamicMBean {
+
+    public static final String DOMAIN = "de.hpi.rdf.tailrapi";
+
+    /* all counters of one endpoint */
+    private static class Stats {
+
+        final LongAdder errors = new LongAdder();
+
+        final LongAdder failures = new LongAdder();
+
+        final LongAdder retries = new LongAdder();
+
+        final LongAdder bytesSent = new LongAdder();
+
+        final LongAdder bytesReceived = new LongAdder();
+
+        final LongAdder cacheHits = new LongAdder();
+
+        final LongAdder cacheMisses = new LongAdder();
+
+        final LongAdder coalesced = new LongAdder();
+
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        double cacheHitRate() {
+            long hits = cacheHits.sum();
+            long all = hits + cacheMisses.sum();
+            return all == 0 ? 0 : (double) hits / all;
+        }
+    }
+
+    private final String name;
+
+    private final Stats[] stats = new Stats[Endpoint.values().length];
+
+    private final Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+
+    private volatile RequestExecutor executor;
+
+    private ObjectName objectName;
+
+    /**
+     * Instantiates a new recorder. It has to be registered to be visible.
+     *
+     * @param name the name of the MBean, e.g. the repository or application
+     */
+    public JmxMetricsRecorder(String name) {
+        this.name = name;
+        for (Endpoint endpoint : Endpoint.values()) {
+            final Stats s = new Stats();
+            stats[endpoint.ordinal()] = s;
+            String prefix = attributeName(endpoint) + ".";
+            attributes.put(prefix + "Requests", () -> s.latency.getCount());
+            attributes.put(prefix + "Errors", () -> s.errors.sum());
+            attributes.put(prefix + "Failures", () -> s.failures.sum());
+            attributes.put(prefix + "Retries", () -> s.retries.sum());
+            attributes.put(prefix + "BytesSent", () -> s.bytesSent.sum());
+            attributes.put(prefix + "BytesReceived", () -> s.bytesReceived.sum());
+            attributes.put(prefix + "CacheHits", () -> s.cacheHits.sum());
+            attributes.put(prefix + "CacheMisses", () -> s.cacheMisses.sum());
+            attributes.put(prefix + "CacheHitRate", s::cacheHitRate);
+            attributes.put(prefix + "Coalesced", () -> s.coalesced.sum());
+            attributes.put(prefix + "LatencyMeanMillis", () -> s.latency.getMeanMillis());
+            attributes.put(prefix + "LatencyP50Millis", () -> s.latency.getPercentileMillis(0.5));
+            attributes.put(prefix + "LatencyP99Millis", () -> s.latency.getPercentileMillis(0.99));
+            attributes.put(prefix + "LatencyMaxMillis", () -> s.latency.getMaxMillis());
+        }
+        attributes.put("Pool.Leased", () -> executor == null ? 0 : executor.getConnectionPool().getLeased());
+        attributes.put("Pool.Available", () -> executor == null ? 0 : executor.getConnectionPool().getAvailable());
+        attributes.put("Pool.Pending", () -> executor == null ? 0 : executor.getConnectionPool().getPending());
+        attributes.put("Executor.InFlight", () -> executor == null ? 0 : executor.getInFlight());
+        attributes.put("Executor.ConcurrencyLimit", () -> executor == null ? 0 : executor.getConcurrencyLimit());
+        attributes.put("Executor.RateLimit", () -> executor == null ? 0 : executor.getRateLimit());
+        attributes.put("Executor.Throttled", () -> executor == null ? 0 : executor.getThrottled());
+    }
+
+    /* TIMEMAP -> Timemap, INDEX_PAGE -> IndexPage */
+    private static String attributeName(Endpoint endpoint) {
+        StringBuilder builder = new StringBuilder();
+        for (String part : endpoint.name().split("_")) {
+            builder.append(part.charAt(0)).append(part.substring(1).toLowerCase(Locale.ROOT));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Publishes the state of an executor and its pool with this recorder
+     * and makes this the recorder of the executor.
+     *
+     * @param executor the executor
+     * @return this recorder
+     */
+    public JmxMetricsRecorder watch(RequestExecutor executor) {
+        this.executor = executor;
+        executor.metrics(this);
+        return this;
+    }
+
+    /**
+     * Registers the MBean at the platform MBean server.
+     *
+     * @return the name of the MBean
+     * @throws JMException if the MBean can not be registered, e.g. since the name is taken
+     */
+    public synchronized ObjectName register() throws JMException {
+        if (objectName == null) {
+            ObjectName on = new ObjectName(DOMAIN + ":type=TailrClient,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        }
+        return objectName;
+    }
+
+    /**
+     * Removes the MBean from the platform MBean server.
+     *
+     * @throws JMException if the MBean can not be removed
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void request(Endpoint endpoint, int status, long latencyNanos) {
+        Stats s = stats[endpoint.ordinal()];
+        s.latency.record(latencyNanos);
+        if (status >= 400) {
+            s.errors.increment();
+        }
+    }
+
+    @Override
+    public void failure(Endpoint endpoint) {
+        stats[endpoint.ordinal()].failures.increment();
+    }
+
+    @Override
+    public void retry(Endpoint endpoint) {
+        stats[endpoint.ordinal()].retries.increment();
+    }
+
+    @Override
+    public void bytesSent(Endpoint endpoint, long bytes) {
+        stats[endpoint.ordinal()].bytesSent.add(bytes);
+    }
+
+    @Override
+    public void bytesReceived(Endpoint endpoint, long bytes) {
+        stats[endpoint.ordinal()].bytesReceived.add(bytes);
+    }
+
+    @Override
+    public void cacheHit(Endpoint endpoint) {
+        stats[endpoint.ordinal()].cacheHits.increment();
+    }
+
+    @Override
+    public void cacheMiss(Endpoint endpoint) {
+        stats[endpoint.ordinal()].cacheMisses.increment();
+    }
+
+    @Override
+    public void coalesced(Endpoint endpoint) {
+        stats[endpoint.ordinal()].coalesced.increment();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<Object> value = attributes.get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value.get();
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("All attributes are read-only.");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        AttributeList list = new AttributeList();
+        for (String attribute : names) {
+            Supplier<Object> value = attributes.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value.get()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Object>> e : attributes.entrySet()) {
+            String type = e.getValue().get().getClass().getName();
+            infos.add(new MBeanAttributeInfo(e.getKey(), type, e.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of the tailr client " + name,
+                infos.toArray(new MBeanAttributeInfo[infos.size()]), null, null, null);
+    }
+}
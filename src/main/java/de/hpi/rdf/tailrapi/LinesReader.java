@@ -0,0 +1,49 @@
+package de.hpi.rdf.tailrapi;
+
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * Reads a sequence of lines as one text, each line terminated by a line feed.
+ * The lines are not copied into a single string.
+ */
+class LinesReader extends Reader {
+
+    private final Iterator<String> lines;
+
+    private String current;
+
+    private int position;
+
+    LinesReader(Iterable<String> lines) {
+        this.lines = lines.iterator();
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        int read = 0;
+        while (read < length) {
+            if (current == null) {
+                if (!lines.hasNext()) {
+                    break;
+                }
+                current = lines.next();
+                position = 0;
+            }
+            if (position == current.length()) {
+                buffer[offset + read++] = '\n';
+                current = null;
+                continue;
+            }
+            int n = Math.min(length - read, current.length() - position);
+            current.getChars(position, position + n, buffer, offset + read);
+            position += n;
+            read += n;
+        }
+        return read == 0 && length > 0 ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -1,19 +1,13 @@
 package de.hpi.rdf.tailrapi;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.cache.HeaderConstants;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.jena.atlas.web.HttpException;
 import org.apache.jena.graph.Graph;
-import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -27,45 +21,130 @@ import java.net.URLEncoder;
  */
 public class Memento {
 
-    private static DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss");
-    private static DateTimeFormatter fmtQS = DateTimeFormat.forPattern("yyyy-MM-dd-HH:mm:ss");
-
     private Repository repository;
     private String key;
+    /* the datetime as encoded by DatetimeCodec, the DateTime is only created when asked for */
+    private long seconds;
     private DateTime dateTime;
     private boolean isPrivate;
     private String token;
 
+    /* the client which read this memento from a timemap, null for mementos created by hand */
+    private TailrClient client;
+
+    /* the memento uri after the base uri up to the datetime, shared by all mementos of a timemap */
+    private String queryPrefix;
+
     public Memento(Repository repo, String key, String dateTime) {
-        this(repo, key, DateTime.parse(dateTime, fmt));
+        this(repo, key, dateTime, false, null);
     }
 
     public Memento(Repository repo, String key, String dateTime, boolean isPrivate, String token) {
-        this(repo, key, DateTime.parse(dateTime, fmt), isPrivate, token);
+        this.repository = repo;
+        this.key = key;
+        this.seconds = DatetimeCodec.parse(dateTime);
+        this.isPrivate = isPrivate;
+        this.token = token;
     }
 
     public Memento(Repository repo, String key, DateTime dateTime) {
-        this.repository = repo;
-        this.key = key;
-        this.dateTime = dateTime;
+        this(repo, key, dateTime, false, null);
     }
 
     public Memento(Repository repo, String key, DateTime dateTime, boolean isPrivate, String token) {
         this.repository = repo;
         this.key = key;
+        this.seconds = DatetimeCodec.of(dateTime);
         this.dateTime = dateTime;
         this.isPrivate = isPrivate;
         this.token = token;
     }
 
+    /* a memento read by a client, which resolves it with its own token */
+    Memento(TailrClient client, Repository repo, String key, long seconds, String queryPrefix) {
+        this.repository = repo;
+        this.key = key;
+        this.seconds = seconds;
+        this.client = client;
+        this.queryPrefix = queryPrefix;
+    }
+
+    /**
+     * Resolves the content of this memento. Mementos read by a {@link TailrClient}
+     * are resolved through that client and its cache. Mementos created by hand fall back
+     * to the default tailr instance and executor. This fallback is deprecated, such mementos
+     * should be resolved with {@link TailrClient#resolve(Memento)}
+     * or {@link #resolve(URI, RequestExecutor, StreamRDF)}.
+     *
+     * @return the graph stored under this memento
+     */
     public Graph resolve() throws HttpException, IOException, URISyntaxException {
-        URI uri = new URI(getMementoUri().toString());
+        Graph g = GraphFactory.createDefaultGraph();
+        resolve(StreamRDFLib.graph(g));
+        return g;
+    }
 
-        if (isPrivate) {
-            return resolvePrivate(uri.toASCIIString());
-        } else {
-            return RDFDataMgr.loadGraph(uri.toASCIIString());
+    /**
+     * Resolves the content of this memento into a sink. The triples are
+     * parsed while they are read, so memory use does not grow with the size of the version.
+     *
+     * Mementos created by hand fall back to the default tailr instance, see {@link #resolve()}.
+     *
+     * @param sink the receiver of the triples
+     */
+    public void resolve(final StreamRDF sink) throws HttpException, IOException, URISyntaxException {
+        if (client != null) {
+            client.resolve(this, sink);
+            return;
         }
+        resolve(defaultTailrUri(), RequestExecutor.getDefault(), sink);
+    }
+
+    /**
+     * Resolves the content of this memento from a tailr instance, with the token
+     * given to the memento if it is private.
+     *
+     * @param tailrUri the base uri of tailr
+     * @param executor the executor sending the request
+     * @param sink     the receiver of the triples
+     */
+    public void resolve(URI tailrUri, RequestExecutor executor, final StreamRDF sink) throws IOException, URISyntaxException {
+        TailrClient.fetchMemento(executor, getMementoUri(tailrUri).toASCIIString(), isPrivate ? token : null, in -> {
+            TailrClient.parse(in, sink);
+            return null;
+        });
+    }
+
+    /**
+     * Iterates over the triples of this memento while they are read.
+     * The iterator has to be closed if it is not consumed completely. Mementos created by hand
+     * fall back to the default tailr instance, which is deprecated in favour of
+     * {@link #resolveAsIterator(URI, RequestExecutor)}.
+     *
+     * @return the triple iterator
+     */
+    public ExtendedIterator<Triple> resolveAsIterator() throws HttpException, IOException, URISyntaxException {
+        if (client != null) {
+            return client.resolveAsIterator(this);
+        }
+        return resolveAsIterator(defaultTailrUri(), RequestExecutor.getDefault());
+    }
+
+    /**
+     * Iterates over the triples of this memento from a tailr instance while they are read,
+     * with the token given to the memento if it is private.
+     *
+     * @param tailrUri the base uri of tailr
+     * @param executor the executor sending the request
+     * @return the triple iterator
+     */
+    public ExtendedIterator<Triple> resolveAsIterator(URI tailrUri, RequestExecutor executor) throws IOException, URISyntaxException {
+        return TailrClient.iterateMemento(executor, getMementoUri(tailrUri).toASCIIString(), isPrivate ? token : null);
+    }
+
+    /* the deprecated fallback for mementos created by hand */
+    private static URI defaultTailrUri() throws URISyntaxException {
+        return TailrClient.getInstance().getTailrUri();
     }
 
     public Repository getRepository() {
@@ -77,31 +156,51 @@ public class Memento {
     }
 
     public DateTime getDateTime() {
+        if (dateTime == null) {
+            dateTime = DatetimeCodec.toDateTime(seconds);
+        }
         return dateTime;
     }
 
+    /* the datetime as encoded by DatetimeCodec */
+    long getSeconds() {
+        return seconds;
+    }
+
+    TailrClient getClient() {
+        return client;
+    }
+
+    /**
+     * Gets the uri of this memento at the tailr instance of the client which read it.
+     * Mementos created by hand fall back to the default tailr instance, which is deprecated
+     * in favour of {@link #getMementoUri(URI)}.
+     *
+     * @return the memento uri
+     */
     public URI getMementoUri() throws UnsupportedEncodingException, URISyntaxException {
-        return new URI(TailrClient.getInstance().getTailrUri().toString() + "api/" + repository.getUser() + "/" + repository.getName() + "?key=" + URLEncoder.encode(key, "UTF8") + "&datetime=" + fmtQS.print(dateTime));
+        return getMementoUri(client != null ? client.getTailrUri() : defaultTailrUri());
     }
 
     public URI getMementoUri(URI tailrUri) throws UnsupportedEncodingException, URISyntaxException {
-        return new URI(tailrUri.toString() + "api/" + repository.getUser() + "/" + repository.getName() + "?key=" + URLEncoder.encode(key, "UTF8") + "&datetime=" + fmtQS.print(dateTime));
-    }
-
-    private Graph resolvePrivate(String url) throws IOException {
-        HttpGet request = new HttpGet(url);
-        request.addHeader(HeaderConstants.AUTHORIZATION, "token " + token);
-        request.addHeader("Accept", "application/n-triples");
-        HttpClient httpClient = HttpClients.custom().build();
-
-        try {
-            HttpResponse response = httpClient.execute(request);
-            HttpEntity entity = response.getEntity();
-            Graph g = GraphFactory.createDefaultGraph();
-            RDFDataMgr.read(g, entity.getContent(), Lang.N3);
-            return g;
-        } catch (IOException e) {
-            throw new IOException("Failed to resolve from private repo.", e);
+        return new URI(getMementoUrl(tailrUri));
+    }
+
+    /* the memento uri as a string, built from the cached query prefix */
+    String getMementoUrl(URI tailrUri) throws UnsupportedEncodingException {
+        String prefix = queryPrefix;
+        if (prefix == null) {
+            prefix = queryPrefix(repository, key);
+            queryPrefix = prefix;
         }
+        String base = tailrUri.toString();
+        StringBuilder url = new StringBuilder(base.length() + prefix.length() + DatetimeCodec.LENGTH)
+                .append(base).append(prefix);
+        return DatetimeCodec.append(url, seconds, DatetimeCodec.QUERY).toString();
+    }
+
+    /* the part of a memento uri after the base uri up to the datetime, with the key encoded */
+    static String queryPrefix(Repository repo, String key) throws UnsupportedEncodingException {
+        return "api/" + repo.getUser() + "/" + repo.getName() + "?key=" + URLEncoder.encode(key, "UTF8") + "&datetime=";
     }
 }
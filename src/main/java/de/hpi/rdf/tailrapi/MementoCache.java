@@ -0,0 +1,61 @@
+package de.hpi.rdf.tailrapi;
+
+import java.io.IOException;
+
+/**
+ * A cache for the immutable content and deltas of {@link Memento}s.
+ * <p>
+ * A memento read from a timemap has a fixed datetime and never changes,
+ * so its content and its delta can be kept as long as the memento
+ * or its predecessor is not deleted. Entries are identified by
+ * user, repository, key and datetime.
+ * <p>
+ * A cache is plugged into a {@link TailrClient} which consults it on every read.
+ */
+public interface MementoCache {
+
+    /**
+     * Gets the cached content of a memento.
+     *
+     * @param m the memento
+     * @return the content in N-Triples or null if not cached
+     * @throws IOException if the cache can not be read
+     */
+    public byte[] getContent(Memento m) throws IOException;
+
+    /**
+     * Stores the content of a memento.
+     *
+     * @param m       the memento
+     * @param content the content in N-Triples
+     * @throws IOException if the cache can not be written
+     */
+    public void putContent(Memento m, byte[] content) throws IOException;
+
+    /**
+     * Gets the cached delta of a memento.
+     *
+     * @param m the memento
+     * @return the delta or null if not cached
+     * @throws IOException if the cache can not be read
+     */
+    public Delta getDelta(Memento m) throws IOException;
+
+    /**
+     * Stores the delta of a memento.
+     *
+     * @param m the memento
+     * @param d the delta to the previous memento
+     * @throws IOException if the cache can not be written
+     */
+    public void putDelta(Memento m, Delta d) throws IOException;
+
+    /**
+     * Removes the content and delta of a deleted memento. Since the delta of the
+     * following memento changes as well, all deltas of the key are removed.
+     *
+     * @param m the deleted memento
+     * @throws IOException if the cache can not be written
+     */
+    public void invalidate(Memento m) throws IOException;
+}
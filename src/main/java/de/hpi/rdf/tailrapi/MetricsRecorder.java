@@ -0,0 +1,95 @@
+package de.hpi.rdf.tailrapi;
+
+/**
+ * Receives measurements of the requests of a client.
+ * <p>
+ * The methods are called on the request path from many threads, implementations
+ * have to be thread-safe and cheap. All methods do nothing by default,
+ * {@link #NOOP} is used if no recorder is configured.
+ *
+ * @see RequestExecutor#metrics(MetricsRecorder)
+ * @see JmxMetricsRecorder
+ */
+public interface MetricsRecorder {
+
+    /**
+     * The kinds of requests sent to tailr.
+     */
+    enum Endpoint {
+        REPOSITORIES, INDEX_PAGE, TIMEMAP, LATEST, RESOLVE, DELTA, PUT, DELETE, OTHER
+    }
+
+    /**
+     * A recorder dropping all measurements.
+     */
+    MetricsRecorder NOOP = new MetricsRecorder() {
+    };
+
+    /**
+     * Called when the response headers of a request arrived.
+     *
+     * @param endpoint     the kind of request
+     * @param status       the status code of the response
+     * @param latencyNanos the time until the response headers arrived
+     */
+    default void request(Endpoint endpoint, int status, long latencyNanos) {
+    }
+
+    /**
+     * Called for a request which got no response.
+     *
+     * @param endpoint the kind of request
+     */
+    default void failure(Endpoint endpoint) {
+    }
+
+    /**
+     * Called before a request is sent again.
+     *
+     * @param endpoint the kind of request
+     */
+    default void retry(Endpoint endpoint) {
+    }
+
+    /**
+     * Called with the size of a sent request body, if it is known up front.
+     *
+     * @param endpoint the kind of request
+     * @param bytes    the number of bytes
+     */
+    default void bytesSent(Endpoint endpoint, long bytes) {
+    }
+
+    /**
+     * Called when a response body is closed.
+     *
+     * @param endpoint the kind of request
+     * @param bytes    the number of bytes read
+     */
+    default void bytesReceived(Endpoint endpoint, long bytes) {
+    }
+
+    /**
+     * Called when an answer was served from a cache, a revalidated timemap counts as hit.
+     *
+     * @param endpoint the kind of request saved
+     */
+    default void cacheHit(Endpoint endpoint) {
+    }
+
+    /**
+     * Called when a cacheable answer was not found in the cache.
+     *
+     * @param endpoint the kind of request needed
+     */
+    default void cacheMiss(Endpoint endpoint) {
+    }
+
+    /**
+     * Called when a read joined an identical request in flight instead of sending its own.
+     *
+     * @param endpoint the kind of request saved
+     */
+    default void coalesced(Endpoint endpoint) {
+    }
+}
@@ -0,0 +1,317 @@
+package de.hpi.rdf.tailrapi;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Computes the delta between two N-Triples documents line by line, as tailr does on a put.
+ * <p>
+ * Lines are canonicalized first, so whitespace and comments do not count as changes.
+ * If both documents fit the in-memory limit, the delta is computed with hash sets and the triples
+ * are reported in document order. Larger documents are sorted externally in runs written to
+ * temporary files, the sorted documents are then merged and the triples are reported in sorted order.
+ * Duplicate lines are reported once. Blank nodes are compared by label.
+ */
+final class NTriplesDiff {
+
+    static final int DEFAULT_MAX_LINES_IN_MEMORY = 1000000;
+
+    private final int maxLinesInMemory;
+
+    private final Path tempDir;
+
+    NTriplesDiff() {
+        this(DEFAULT_MAX_LINES_IN_MEMORY, null);
+    }
+
+    /**
+     * Instantiates a new diff.
+     *
+     * @param maxLinesInMemory the number of distinct lines per document held in memory
+     * @param tempDir          the directory of the sorted runs or null for the default temporary directory
+     */
+    NTriplesDiff(int maxLinesInMemory, Path tempDir) {
+        if (maxLinesInMemory < 1) {
+            throw new IllegalArgumentException("At least one line has to be held in memory.");
+        }
+        this.maxLinesInMemory = maxLinesInMemory;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Reports the triples of the second document missing in the first as added
+     * and those of the first missing in the second as removed. The readers are not closed.
+     *
+     * @param before  the old document
+     * @param after   the new document
+     * @param handler the receiver of the delta
+     * @throws IOException if a document or a run can not be read or written
+     */
+    void diff(Reader before, Reader after, DeltaHandler handler) throws IOException {
+        try (Lines old = read(before); Lines current = read(after)) {
+            if (old.runs.isEmpty() && current.runs.isEmpty()) {
+                for (String triple : current.lines) {
+                    if (!old.lines.remove(triple)) {
+                        handler.added(triple);
+                    }
+                }
+                for (String triple : old.lines) {
+                    handler.removed(triple);
+                }
+                return;
+            }
+            merge(old.sorted(), current.sorted(), handler);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /* both iterators are sorted and distinct */
+    private static void merge(Iterator<String> old, Iterator<String> current, DeltaHandler handler) {
+        String o = old.hasNext() ? old.next() : null;
+        String c = current.hasNext() ? current.next() : null;
+        while (o != null || c != null) {
+            int cmp = o == null ? 1 : c == null ? -1 : o.compareTo(c);
+            if (cmp < 0) {
+                handler.removed(o);
+                o = old.hasNext() ? old.next() : null;
+            } else if (cmp > 0) {
+                handler.added(c);
+                c = current.hasNext() ? current.next() : null;
+            } else {
+                o = old.hasNext() ? old.next() : null;
+                c = current.hasNext() ? current.next() : null;
+            }
+        }
+    }
+
+    private Lines read(Reader reader) throws IOException {
+        Lines lines = new Lines();
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String triple = canonicalize(line);
+                if (triple != null && lines.lines.add(triple) && lines.lines.size() >= maxLinesInMemory) {
+                    lines.spill();
+                }
+            }
+            if (!lines.runs.isEmpty() && !lines.lines.isEmpty()) {
+                lines.spill();
+            }
+        } catch (IOException | RuntimeException e) {
+            lines.close();
+            throw e;
+        }
+        return lines;
+    }
+
+    /**
+     * Brings a line into the canonical form <code>s p o .</code> with single spaces
+     * between the terms. Lines which are not a triple are only trimmed.
+     *
+     * @param line a line of an N-Triples document
+     * @return the canonical triple or null for blank lines and comments
+     */
+    static String canonicalize(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(trimmed.length());
+        int i = 0;
+        for (int term = 0; term < 3; term++) {
+            i = skipWhitespace(trimmed, i);
+            int end = termEnd(trimmed, i);
+            if (end <= i) {
+                return trimmed;
+            }
+            builder.append(trimmed, i, end).append(' ');
+            i = end;
+        }
+        i = skipWhitespace(trimmed, i);
+        if (i >= trimmed.length() || trimmed.charAt(i) != '.') {
+            return trimmed;
+        }
+        i = skipWhitespace(trimmed, i + 1);
+        if (i < trimmed.length() && trimmed.charAt(i) != '#') {
+            return trimmed;
+        }
+        return builder.append('.').toString();
+    }
+
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /* the index after an IRI, blank node or literal starting at i, or i if there is none */
+    static int termEnd(String s, int i) {
+        if (i >= s.length()) {
+            return i;
+        }
+        char c = s.charAt(i);
+        if (c == '<') {
+            int end = s.indexOf('>', i + 1);
+            return end < 0 ? i : end + 1;
+        }
+        if (c == '_') {
+            int end = i + 2;
+            while (end < s.length() && s.charAt(end) != ' ' && s.charAt(end) != '\t') {
+                end++;
+            }
+            /* a label may not end with a dot, so a dot right after it ends the triple */
+            while (end > i + 2 && s.charAt(end - 1) == '.') {
+                end--;
+            }
+            return end;
+        }
+        if (c == '"') {
+            int end = i + 1;
+            while (end < s.length() && s.charAt(end) != '"') {
+                end += s.charAt(end) == '\\' ? 2 : 1;
+            }
+            if (end >= s.length()) {
+                return i;
+            }
+            end++;
+            if (end < s.length() && s.charAt(end) == '@') {
+                while (end < s.length() && (Character.isLetterOrDigit(s.charAt(end)) || s.charAt(end) == '-'
+                        || s.charAt(end) == '@')) {
+                    end++;
+                }
+            } else if (s.startsWith("^^<", end)) {
+                int close = s.indexOf('>', end + 3);
+                end = close < 0 ? i : close + 1;
+            }
+            return end;
+        }
+        return i;
+    }
+
+    /* the distinct lines of one document, in memory or as sorted runs on disk */
+    private class Lines implements Closeable {
+
+        final Set<String> lines = new LinkedHashSet<>();
+
+        final List<Path> runs = new ArrayList<>();
+
+        final List<BufferedReader> readers = new ArrayList<>();
+
+        void spill() throws IOException {
+            String[] sorted = lines.toArray(new String[lines.size()]);
+            lines.clear();
+            Arrays.sort(sorted);
+            Path run = tempDir == null ? Files.createTempFile("tailr-diff", ".nt")
+                    : Files.createTempFile(tempDir, "tailr-diff", ".nt");
+            runs.add(run);
+            try (BufferedWriter out = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+                for (String triple : sorted) {
+                    out.write(triple);
+                    out.write('\n');
+                }
+            }
+        }
+
+        /* all lines in sorted order without duplicates, merging the runs */
+        Iterator<String> sorted() throws IOException {
+            if (runs.isEmpty()) {
+                String[] sorted = lines.toArray(new String[lines.size()]);
+                Arrays.sort(sorted);
+                return Arrays.asList(sorted).iterator();
+            }
+            final PriorityQueue<Run> queue = new PriorityQueue<>(runs.size());
+            for (Path path : runs) {
+                BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+                readers.add(reader);
+                Run run = new Run(reader);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            return new Iterator<String>() {
+
+                private String last;
+
+                @Override
+                public boolean hasNext() {
+                    while (!queue.isEmpty() && queue.peek().head.equals(last)) {
+                        pollAdvance();
+                    }
+                    return !queue.isEmpty();
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    last = pollAdvance();
+                    return last;
+                }
+
+                private String pollAdvance() {
+                    Run run = queue.poll();
+                    String head = run.head;
+                    try {
+                        if (run.advance()) {
+                            queue.add(run);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return head;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /* the current line of a sorted run */
+    private static class Run implements Comparable<Run> {
+
+        final BufferedReader reader;
+
+        String head;
+
+        Run(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            head = reader.readLine();
+            return head != null;
+        }
+
+        @Override
+        public int compareTo(Run o) {
+            return head.compareTo(o.head);
+        }
+    }
+}
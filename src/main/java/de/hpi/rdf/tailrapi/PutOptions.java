@@ -0,0 +1,96 @@
+package de.hpi.rdf.tailrapi;
+
+/**
+ * Options for storing new {@link Memento} versions.
+ * <p>
+ * By default the {@link Delta} of every stored version is retrieved, which costs
+ * two more requests per key. Batches run with a few uploads in parallel.
+ * Content is sent uncompressed and uploaded even if it equals the latest version.
+ */
+public class PutOptions {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private boolean returnDelta = true;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private boolean compress;
+
+    private boolean putIfChanged;
+
+    /**
+     * Gets the default options.
+     *
+     * @return new default options
+     */
+    public static PutOptions defaults() {
+        return new PutOptions();
+    }
+
+    /**
+     * Sets whether the delta of a stored version is retrieved.
+     *
+     * @param returnDelta false to skip the delta retrieval
+     * @return these options
+     */
+    public PutOptions returnDelta(boolean returnDelta) {
+        this.returnDelta = returnDelta;
+        return this;
+    }
+
+    /**
+     * Sets the number of concurrent uploads in a batch.
+     *
+     * @param parallelism the number of concurrent uploads
+     * @return these options
+     */
+    public PutOptions parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one upload has to run at a time.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets whether the uploaded content is gzip compressed.
+     * Compressed content is sent chunked since its length is not known up front.
+     *
+     * @param compress true to compress the request body
+     * @return these options
+     */
+    public PutOptions compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /**
+     * Sets whether the delta is computed locally before an upload, so content equal to
+     * the latest version is not uploaded. The latest version is fetched instead, the returned
+     * delta is the local one. Only string and file contents are compared, streams are always uploaded.
+     *
+     * @param putIfChanged true to skip unchanged uploads
+     * @return these options
+     */
+    public PutOptions putIfChanged(boolean putIfChanged) {
+        this.putIfChanged = putIfChanged;
+        return this;
+    }
+
+    public boolean isReturnDelta() {
+        return returnDelta;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public boolean isPutIfChanged() {
+        return putIfChanged;
+    }
+}
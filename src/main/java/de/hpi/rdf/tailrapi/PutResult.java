@@ -0,0 +1,64 @@
+package de.hpi.rdf.tailrapi;
+
+/**
+ * The outcome of storing a new version of one key within a batch.
+ * <p>
+ * Either the put succeeded and carries the {@link Delta}, if it was requested,
+ * or it failed and carries the exception.
+ */
+public class PutResult {
+
+    private final String key;
+
+    private final Delta delta;
+
+    private final Exception error;
+
+    private PutResult(String key, Delta delta, Exception error) {
+        this.key = key;
+        this.delta = delta;
+        this.error = error;
+    }
+
+    static PutResult success(String key, Delta delta) {
+        return new PutResult(key, delta, null);
+    }
+
+    static PutResult failure(String key, Exception error) {
+        return new PutResult(key, null, error);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the delta of the stored version.
+     *
+     * @return the delta or null if it was not requested or the put failed
+     */
+    public Delta getDelta() {
+        return delta;
+    }
+
+    /**
+     * Gets the reason of a failed put.
+     *
+     * @return the exception or null if the put succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PutResult{" +
+                "key='" + key + '\'' +
+                (isSuccess() ? ", delta=" + delta : ", error=" + error) +
+                '}';
+    }
+}
@@ -1,16 +1,7 @@
 package de.hpi.rdf.tailrapi;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-
-import java.net.URL;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -20,23 +11,56 @@ public class Repository {
 
     private String user;
     private String name;
-    private URL uri;
-    private List<String> keys;
+    private volatile RepositoryKeyIndex keyIndex;
 
     public Repository(String user, String name) {
         this.user = user;
         this.name = name;
-
-        initialize();
     }
 
-    private void initialize() {
-        // get key index
+    /**
+     * Gets the local key index of this repository, loading it on the first call.
+     * The index is read from the file, only if there is none the key index of tailr is walked.
+     * Later calls return the loaded index and have to pass the same client and file.
+     * Indexes of other clients or files are opened with {@link RepositoryKeyIndex#open(TailrClient, Repository, Path)}.
+     *
+     * @param client the client to fetch keys with
+     * @param file   the index file
+     * @return the key index
+     * @throws IOException              if the key index can not be fetched or stored
+     * @throws IllegalArgumentException if the loaded index belongs to another client or file
+     */
+    public RepositoryKeyIndex getKeyIndex(TailrClient client, Path file) throws IOException {
+        RepositoryKeyIndex index = keyIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = keyIndex;
+                if (index == null) {
+                    index = RepositoryKeyIndex.open(client, this, file);
+                    keyIndex = index;
+                    return index;
+                }
+            }
+        }
+        if (index.getClient() != client || !sameFile(index.getFile(), file)) {
+            throw new IllegalArgumentException("The key index of " + user + "/" + name + " was loaded from "
+                    + index.getFile() + " with another client or file.");
+        }
+        return index;
+    }
 
+    private static boolean sameFile(Path a, Path b) {
+        return a.toAbsolutePath().normalize().equals(b.toAbsolutePath().normalize());
     }
 
+    /**
+     * Gets the keys of the loaded key index, see {@link #getKeyIndex(TailrClient, Path)}.
+     *
+     * @return the sorted keys or null if no key index was loaded
+     */
     public List<String> getKeys() {
-        return keys;
+        RepositoryKeyIndex index = keyIndex;
+        return index == null ? null : index.keys();
     }
 
     public String getUser() {
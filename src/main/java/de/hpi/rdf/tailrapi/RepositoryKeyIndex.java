@@ -0,0 +1,428 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A local index of the keys of a {@link Repository}, persisted in one file.
+ * <p>
+ * The keys are stored sorted by their UTF-8 bytes behind a table of their offsets. The file
+ * is memory-mapped, so opening a stored index reads nothing but its header. Lookups by key,
+ * prefix or range are binary searches and only the keys returned are decoded.
+ * <p>
+ * A refresh only fetches the index pages of tailr from the last one seen on, assuming tailr
+ * appends new keys to its paged index. If that page does not start with the keys it had before,
+ * the whole index is walked again. Keys whose mementos were all deleted are only dropped by {@link #rebuild()}.
+ * <p>
+ * The index is thread-safe. A refresh writes a new file and moves it over the old one,
+ * lookups running meanwhile keep reading the keys they started with.
+ */
+public class RepositoryKeyIndex {
+
+    private static Logger L = LogManager.getLogger(RepositoryKeyIndex.class);
+
+    /* "TKI1" */
+    private static final int MAGIC = 0x544b4931;
+
+    /* magic, number of keys, number of keys on the last page, number of the last page */
+    private static final int HEADER = 16;
+
+    private static final Comparator<byte[]> UNSIGNED = (a, b) -> {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    private final TailrClient client;
+
+    private final Repository repository;
+
+    private final Path file;
+
+    private volatile Keys keys;
+
+    private RepositoryKeyIndex(TailrClient client, Repository repository, Path file) {
+        this.client = client;
+        this.repository = repository;
+        this.file = file;
+    }
+
+    /**
+     * Opens the index stored in a file. Only if there is none or it can not be read,
+     * the key index of tailr is walked and stored. Unlike {@link Repository#getKeyIndex(TailrClient, Path)}
+     * every call opens a new index, which is not kept by the repository.
+     *
+     * @param client     the client to fetch keys with
+     * @param repository the repository
+     * @param file       the index file
+     * @return the index
+     * @throws IOException if the key index can not be fetched or stored
+     */
+    public static RepositoryKeyIndex open(TailrClient client, Repository repository, Path file) throws IOException {
+        RepositoryKeyIndex index = new RepositoryKeyIndex(client, repository, file);
+        if (Files.exists(file)) {
+            try {
+                index.keys = Keys.map(file);
+                return index;
+            } catch (IOException e) {
+                L.warn("Rebuilding the unreadable key index " + file, e);
+            }
+        }
+        index.rebuild();
+        return index;
+    }
+
+    TailrClient getClient() {
+        return client;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the number of keys.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return keys.count;
+    }
+
+    /**
+     * Gets all keys.
+     *
+     * @return the keys in sorted order, decoded on access
+     */
+    public List<String> keys() {
+        Keys k = keys;
+        return new KeyList(k, 0, k.count);
+    }
+
+    /**
+     * Checks whether a key is in the index.
+     *
+     * @param key the key
+     * @return true if the index contains the key
+     */
+    public boolean contains(String key) {
+        Keys k = keys;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int i = k.bound(bytes, false, false);
+        return i < k.count && k.compare(i, bytes, false) == 0;
+    }
+
+    /**
+     * Gets the keys starting with a prefix, e.g. all keys under <code>http://dbpedia.org/resource/A</code>.
+     *
+     * @param prefix the prefix
+     * @return the keys in sorted order, decoded on access
+     */
+    public List<String> prefix(String prefix) {
+        Keys k = keys;
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return new KeyList(k, k.bound(bytes, false, false), k.bound(bytes, true, true));
+    }
+
+    /**
+     * Gets the keys from one key up to another.
+     *
+     * @param from the first key, included, or null to start with the first key
+     * @param to   the end, excluded, or null to end with the last key
+     * @return the keys in sorted order, decoded on access
+     */
+    public List<String> range(String from, String to) {
+        Keys k = keys;
+        int start = from == null ? 0 : k.bound(from.getBytes(StandardCharsets.UTF_8), false, false);
+        int end = to == null ? k.count : k.bound(to.getBytes(StandardCharsets.UTF_8), false, false);
+        return new KeyList(k, start, Math.max(start, end));
+    }
+
+    /**
+     * Adds the keys added to tailr since the last refresh, fetching only the new index pages.
+     * Falls back to {@link #rebuild()} if the pages seen before changed.
+     *
+     * @return true if keys were added or the index was walked again
+     * @throws IOException if an index page can not be fetched or the index can not be stored
+     */
+    public synchronized boolean refresh() throws IOException {
+        Keys current = keys;
+        List<String> tail = current.tail();
+        List<byte[]> added = new ArrayList<>();
+        int firstPage = Math.max(current.lastPage, 1);
+        try (RepositoryKeyIterator it = new RepositoryKeyIterator(client, repository,
+                RepositoryKeyIterator.DEFAULT_PREFETCH, firstPage)) {
+            boolean first = true;
+            int seen = 0;
+            while (it.hasNext()) {
+                String key = it.next();
+                if (first) {
+                    first = false;
+                    List<String> page = it.getPageKeys();
+                    if (page.size() < tail.size() || !page.subList(0, tail.size()).equals(tail)) {
+                        L.info("The key index of {} changed before page {}, walking it again.", repository.getName(), firstPage);
+                        rebuild();
+                        return true;
+                    }
+                }
+                if (seen++ >= tail.size()) {
+                    added.add(key.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            if (first && !tail.isEmpty()) {
+                L.info("The key index of {} shrank, walking it again.", repository.getName());
+                rebuild();
+                return true;
+            }
+            if (added.isEmpty()) {
+                return false;
+            }
+
+            added.sort(UNSIGNED);
+            List<byte[]> merged = new ArrayList<>(current.count + added.size());
+            int i = 0;
+            for (byte[] key : added) {
+                while (i < current.count && current.compare(i, key, false) < 0) {
+                    merged.add(current.bytes(i++));
+                }
+                if (i < current.count && current.compare(i, key, false) == 0) {
+                    continue;
+                }
+                addDistinct(merged, key);
+            }
+            while (i < current.count) {
+                merged.add(current.bytes(i++));
+            }
+            write(merged, it.getPage(), it.getPageKeys());
+            L.debug("Added {} keys to the key index of {}", added.size(), repository.getName());
+            return true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Walks the whole key index of tailr and replaces the stored keys.
+     *
+     * @throws IOException if an index page can not be fetched or the index can not be stored
+     */
+    public synchronized void rebuild() throws IOException {
+        List<byte[]> all = new ArrayList<>();
+        try (RepositoryKeyIterator it = client.iterateRepositoryKeys(repository)) {
+            while (it.hasNext()) {
+                all.add(it.next().getBytes(StandardCharsets.UTF_8));
+            }
+            all.sort(UNSIGNED);
+            List<byte[]> distinct = new ArrayList<>(all.size());
+            for (byte[] key : all) {
+                addDistinct(distinct, key);
+            }
+            write(distinct, it.getPage(), it.getPageKeys());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        L.info("Stored {} keys of {} in {}", keys.count, repository.getName(), file);
+    }
+
+    private static void addDistinct(List<byte[]> sorted, byte[] key) {
+        if (sorted.isEmpty() || UNSIGNED.compare(sorted.get(sorted.size() - 1), key) != 0) {
+            sorted.add(key);
+        }
+    }
+
+    /* write to a temporary file next to the index and move it over the index */
+    private void write(List<byte[]> sorted, int lastPage, List<String> tail) throws IOException {
+        List<byte[]> entries = new ArrayList<>(sorted.size() + tail.size());
+        entries.addAll(sorted);
+        for (String key : tail) {
+            entries.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        long size = HEADER + 4L * (entries.size() + 1);
+        for (byte[] entry : entries) {
+            size += entry.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The key index of " + repository.getName() + " exceeds 2 GB.");
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(sorted.size());
+                out.writeInt(tail.size());
+                out.writeInt(lastPage);
+                int offset = 0;
+                out.writeInt(offset);
+                for (byte[] entry : entries) {
+                    offset += entry.length;
+                    out.writeInt(offset);
+                }
+                for (byte[] entry : entries) {
+                    out.write(entry);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        keys = Keys.map(file);
+    }
+
+    /* the mapped content of one index file, followed by the keys of the last index page in index order */
+    private static final class Keys {
+
+        final ByteBuffer buffer;
+
+        final int count;
+
+        final int tailCount;
+
+        final int lastPage;
+
+        final int data;
+
+        private Keys(ByteBuffer buffer, int count, int tailCount, int lastPage) {
+            this.buffer = buffer;
+            this.count = count;
+            this.tailCount = tailCount;
+            this.lastPage = lastPage;
+            this.data = HEADER + 4 * (count + tailCount + 1);
+        }
+
+        static Keys map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < HEADER + 4 || size > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid key index file " + file);
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                int count = buffer.getInt(4);
+                int tailCount = buffer.getInt(8);
+                long table = HEADER + 4L * ((long) count + tailCount + 1);
+                if (buffer.getInt(0) != MAGIC || count < 0 || tailCount < 0 || table > size
+                        || table + buffer.getInt((int) table - 4) != size) {
+                    throw new IOException("Invalid key index file " + file);
+                }
+                return new Keys(buffer, count, tailCount, buffer.getInt(12));
+            }
+        }
+
+        int start(int i) {
+            return data + buffer.getInt(HEADER + 4 * i);
+        }
+
+        int end(int i) {
+            return data + buffer.getInt(HEADER + 4 * (i + 1));
+        }
+
+        byte[] bytes(int i) {
+            int start = start(i);
+            byte[] bytes = new byte[end(i) - start];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(start + j);
+            }
+            return bytes;
+        }
+
+        String get(int i) {
+            return new String(bytes(i), StandardCharsets.UTF_8);
+        }
+
+        List<String> tail() {
+            List<String> tail = new ArrayList<>(tailCount);
+            for (int i = count; i < count + tailCount; i++) {
+                tail.add(get(i));
+            }
+            return Collections.unmodifiableList(tail);
+        }
+
+        /* compares key i with the bytes, if prefix is set only its first bytes.length bytes count */
+        int compare(int i, byte[] bytes, boolean prefix) {
+            int start = start(i);
+            int length = end(i) - start;
+            int n = Math.min(length, bytes.length);
+            for (int j = 0; j < n; j++) {
+                int c = (buffer.get(start + j) & 0xff) - (bytes[j] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return prefix && length >= bytes.length ? 0 : length - bytes.length;
+        }
+
+        /* the first key greater than or, unless upper is set, equal to the bytes */
+        int bound(byte[] bytes, boolean prefix, boolean upper) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int c = compare(mid, bytes, prefix);
+                if (c < 0 || (upper && c == 0)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /* a range of the sorted keys of one index file */
+    private static final class KeyList extends AbstractList<String> implements RandomAccess {
+
+        private final Keys keys;
+
+        private final int from;
+
+        private final int to;
+
+        KeyList(Keys keys, int from, int to) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return keys.get(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lazy iterator over the keys of a {@link Repository}.
+ * <p>
+ * The key index of tailr is paged. While the keys of the current page
+ * are consumed, the next pages are fetched in the background. The iteration ends
+ * with the first empty page. If a page can not be fetched the iterator throws an
+ * {@link UncheckedIOException} instead of silently ending.
+ * <p>
+ * The iterator has to be closed if it is not consumed completely.
+ */
+public class RepositoryKeyIterator implements Iterator<String>, Closeable {
+
+    private static Logger L = LogManager.getLogger(RepositoryKeyIterator.class);
+
+    public static final int DEFAULT_PREFETCH = 4;
+
+    private final TailrClient client;
+
+    private final Repository repository;
+
+    private final int prefetch;
+
+    private final ExecutorService executor;
+
+    private final Deque<Future<List<String>>> pages = new ArrayDeque<>();
+
+    private Iterator<String> current = Collections.emptyIterator();
+
+    private List<String> currentKeys = Collections.emptyList();
+
+    private int currentPage;
+
+    private int nextPage;
+
+    private boolean exhausted;
+
+    RepositoryKeyIterator(TailrClient client, Repository repository, int prefetch) {
+        this(client, repository, prefetch, 1);
+    }
+
+    /* iterate from the given index page on */
+    RepositoryKeyIterator(TailrClient client, Repository repository, int prefetch, int firstPage) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("At least one page has to be prefetched.");
+        }
+        this.client = client;
+        this.repository = repository;
+        this.prefetch = prefetch;
+        this.nextPage = firstPage;
+        this.executor = Executors.newFixedThreadPool(prefetch,
+                new DaemonThreadFactory("tailr-key-index-" + repository.getName()));
+        fill();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (exhausted) {
+                return false;
+            }
+            int page = nextPage - pages.size();
+            List<String> keys = await(pages.poll(), page);
+
+            if (keys.isEmpty()) {
+                close();
+                return false;
+            }
+            current = keys.iterator();
+            currentKeys = keys;
+            currentPage = page;
+            fill();
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /* the number of the page the last key came from, after the iteration the last non-empty page */
+    int getPage() {
+        return currentPage;
+    }
+
+    /* all keys of that page in index order */
+    List<String> getPageKeys() {
+        return currentKeys;
+    }
+
+    /**
+     * Stops fetching pages and releases the background threads. Waits for the pages
+     * already requested, so no request of the iterator outlives it.
+     */
+    @Override
+    public void close() {
+        exhausted = true;
+        for (Future<List<String>> page : pages) {
+            page.cancel(true);
+        }
+        pages.clear();
+        executor.shutdownNow();
+        try {
+            /* a blocking request is not interrupted, it ends with its response or read timeout */
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                L.warn("Key index pages of " + repository.getName() + " are still requested after closing.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* keep the configured number of pages in flight */
+    private void fill() {
+        while (!exhausted && pages.size() < prefetch) {
+            final int page = nextPage++;
+            pages.add(executor.submit(() -> client.getRepositoryKeyPage(repository, page)));
+        }
+    }
+
+    private List<String> await(Future<List<String>> page, int number) {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            IOException io = cause instanceof IOException ? (IOException) cause
+                    : new IOException(cause);
+            throw new UncheckedIOException("Failed to get repository keys on page " + number, io);
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException("Interrupted while getting repository keys on page " + number,
+                    new IOException(e));
+        }
+    }
+}
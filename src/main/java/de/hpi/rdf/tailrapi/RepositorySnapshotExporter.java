@@ -0,0 +1,526 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the state of a whole {@link Repository} at a datetime as one dump.
+ * <p>
+ * For every key the latest {@link Memento} not after the datetime is resolved, keys without
+ * such a memento are skipped. Several keys are resolved in parallel, their triples pass
+ * a bounded queue to a single writer, so memory use does not depend on the repository size.
+ * By default every key becomes a named graph and the dump is written as N-Quads,
+ * otherwise all triples are written as N-Triples.
+ * <p>
+ * After a failed export the dump can be continued with {@link #resumeAfter(String)}
+ * and the key of {@link #getResumeKey()}. Triples of keys which were in progress at the failure
+ * are written again. Keys which can not be exported are reported and do not stop the export,
+ * but the resume key does not pass them, so a continued export tries them again.
+ * The triples of a key are streamed, so a key failing while it is resolved may already have
+ * batches in the dump. Such keys are reported by {@link #getPartialKeys()} and have to be removed
+ * from the dump or exported again by the caller.
+ */
+public class RepositorySnapshotExporter {
+
+    private static Logger L = LogManager.getLogger(RepositorySnapshotExporter.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    static final int BATCH_SIZE = 1024;
+
+    /**
+     * Receives the progress of an export. The methods are called from the writer thread.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after all triples of a key are written.
+         *
+         * @param key     the exported key
+         * @param triples the number of triples of the key
+         */
+        void keyExported(String key, long triples);
+
+        /**
+         * Called for a key without a memento at the export datetime.
+         *
+         * @param key the skipped key
+         */
+        void keySkipped(String key);
+
+        /**
+         * Called for a key which could not be exported.
+         *
+         * @param key the failed key
+         * @param e   the cause
+         */
+        void keyFailed(String key, Exception e);
+    }
+
+    private static final ProgressListener SILENT = new ProgressListener() {
+        @Override
+        public void keyExported(String key, long triples) {
+        }
+
+        @Override
+        public void keySkipped(String key) {
+        }
+
+        @Override
+        public void keyFailed(String key, Exception e) {
+        }
+    };
+
+    /* a part of the triples of a key, the last one closes the key */
+    private static class Batch {
+
+        static final Batch END = new Batch(null, -1, Collections.<Triple>emptyList(), false, null);
+
+        final String key;
+
+        final int index;
+
+        final List<Triple> triples;
+
+        final boolean last;
+
+        final Exception error;
+
+        Batch(String key, int index, List<Triple> triples, boolean last, Exception error) {
+            this.key = key;
+            this.index = index;
+            this.triples = triples;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+    private final TailrClient client;
+
+    private final Repository repository;
+
+    private int parallelism = PutOptions.DEFAULT_PARALLELISM;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private boolean compress;
+
+    private boolean namedGraphs = true;
+
+    private String resumeAfter;
+
+    private ProgressListener listener = SILENT;
+
+    private volatile String resumeKey;
+
+    private volatile long keysExported;
+
+    private volatile long keysSkipped;
+
+    private volatile long triples;
+
+    private final Map<String, Exception> failedKeys = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> partialKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new exporter.
+     *
+     * @param client     the client used for the requests
+     * @param repository the repository to export
+     */
+    public RepositorySnapshotExporter(TailrClient client, Repository repository) {
+        this.client = client;
+        this.repository = repository;
+    }
+
+    /**
+     * Sets the number of keys resolved at a time.
+     *
+     * @param parallelism the number of concurrent keys
+     * @return this exporter
+     */
+    public RepositorySnapshotExporter parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one key has to be exported at a time.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the number of triple batches waiting for the writer.
+     *
+     * @param queueCapacity the number of waiting batches
+     * @return this exporter
+     */
+    public RepositorySnapshotExporter queueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("At least one batch has to fit into the queue.");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets whether the dump is gzip compressed.
+     *
+     * @param compress true to compress the dump
+     * @return this exporter
+     */
+    public RepositorySnapshotExporter compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /**
+     * Sets whether every key is exported as a named graph.
+     *
+     * @param namedGraphs false to write all triples into the default graph
+     * @return this exporter
+     */
+    public RepositorySnapshotExporter namedGraphs(boolean namedGraphs) {
+        this.namedGraphs = namedGraphs;
+        return this;
+    }
+
+    /**
+     * Continues a previous export after the given key.
+     *
+     * @param key the resume key of the previous export or null to start from the beginning
+     * @return this exporter
+     */
+    public RepositorySnapshotExporter resumeAfter(String key) {
+        this.resumeAfter = key;
+        return this;
+    }
+
+    /**
+     * Sets the receiver of the export progress.
+     *
+     * @param listener the progress listener
+     * @return this exporter
+     */
+    public RepositorySnapshotExporter progress(ProgressListener listener) {
+        this.listener = listener == null ? SILENT : listener;
+        return this;
+    }
+
+    /**
+     * Gets the last key up to which all keys are exported or skipped. An export continued
+     * after this key leaves no key out. The resume key stops before the first failed key,
+     * so the keys after it are written again.
+     *
+     * @return the resume key or null if no key is done
+     */
+    public String getResumeKey() {
+        return resumeKey;
+    }
+
+    public long getKeysExported() {
+        return keysExported;
+    }
+
+    public long getKeysSkipped() {
+        return keysSkipped;
+    }
+
+    public long getTriples() {
+        return triples;
+    }
+
+    public Map<String, Exception> getFailedKeys() {
+        return Collections.unmodifiableMap(failedKeys);
+    }
+
+    /**
+     * Gets the failed keys of which some triples were written before the failure.
+     *
+     * @return the number of triples written by key
+     */
+    public Map<String, Long> getPartialKeys() {
+        return Collections.unmodifiableMap(partialKeys);
+    }
+
+    /**
+     * Exports the repository into a file. A resumed export is appended to the file.
+     *
+     * @param at     the datetime of the snapshot
+     * @param target the dump file
+     * @throws IOException if the key index can not be read or the file can not be written
+     */
+    public void export(DateTime at, Path target) throws IOException {
+        StandardOpenOption mode = resumeAfter == null ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            export(at, out);
+        }
+    }
+
+    /**
+     * Exports the repository into a stream. The stream is not closed.
+     *
+     * @param at  the datetime of the snapshot
+     * @param out the target of the dump
+     * @throws IOException if the key index can not be read or the dump can not be written
+     */
+    public void export(DateTime at, OutputStream out) throws IOException {
+        resumeKey = resumeAfter;
+        keysExported = 0;
+        keysSkipped = 0;
+        triples = 0;
+        failedKeys.clear();
+        partialKeys.clear();
+
+        GZIPOutputStream gzip = compress ? new GZIPOutputStream(out, 1 << 16) : null;
+        StreamRDF sink = StreamRDFLib.writer(gzip == null ? out : gzip);
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+        BatchWriter writer = new BatchWriter(queue, sink);
+
+        DaemonThreadFactory threads = new DaemonThreadFactory("tailr-export-" + repository.getName());
+        Thread writerThread = threads.newThread(writer);
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, threads);
+        Semaphore slots = new Semaphore(parallelism * 2);
+
+        boolean submitted = false;
+        sink.start();
+        writerThread.start();
+        try {
+            submitKeys(at, queue, writer, workers, slots);
+            submitted = true;
+        } finally {
+            workers.shutdown();
+            try {
+                while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                    L.debug("Waiting for the export of " + repository.getName());
+                }
+                queue.put(Batch.END);
+                writerThread.join();
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                writerThread.interrupt();
+                Thread.currentThread().interrupt();
+            }
+            /* the keys written so far count for the resume key, so they have to reach the stream */
+            if (!writerThread.isAlive()) {
+                try {
+                    finish(sink, gzip, out);
+                } catch (IOException | RuntimeException e) {
+                    if (submitted) {
+                        throw e;
+                    }
+                    L.error("Failed to finish the snapshot of " + repository.getName(), e);
+                }
+            }
+        }
+
+        if (writer.error != null) {
+            throw new IOException("Failed writing the snapshot of " + repository.getName(), writer.error);
+        }
+        L.info("Exported " + keysExported + " keys with " + triples + " triples of " + repository.getName()
+                + ", skipped " + keysSkipped + ", failed " + failedKeys.size() + ", partially written " + partialKeys.size());
+    }
+
+    private static void finish(StreamRDF sink, GZIPOutputStream gzip, OutputStream out) throws IOException {
+        sink.finish();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+
+    private void submitKeys(final DateTime at, final BlockingQueue<Batch> queue, BatchWriter writer,
+                            ExecutorService workers, final Semaphore slots) throws IOException {
+        boolean skipping = resumeAfter != null;
+        int index = 0;
+        try (RepositoryKeyIterator keys = client.iterateRepositoryKeys(repository)) {
+            while (writer.error == null && keys.hasNext()) {
+                final String key = keys.next();
+                if (skipping) {
+                    skipping = !key.equals(resumeAfter);
+                    continue;
+                }
+                final int i = index++;
+                slots.acquire();
+                workers.execute(() -> {
+                    try {
+                        exportKey(key, i, at, queue);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting " + repository.getName());
+        }
+        if (skipping) {
+            L.warn("Resume key " + resumeAfter + " not found in " + repository.getName() + ", nothing exported.");
+        }
+    }
+
+    /* resolve the latest memento of the key and pass its triples to the writer in batches */
+    private void exportKey(final String key, final int index, DateTime at, final BlockingQueue<Batch> queue) {
+        Batch last;
+        try {
+            Memento m = mementoAt(key, at);
+            if (m == null) {
+                last = new Batch(key, index, null, true, null);
+            } else {
+                final List<List<Triple>> current = new ArrayList<>(1);
+                current.add(new ArrayList<Triple>(BATCH_SIZE));
+                client.resolve(m, new StreamRDFBase() {
+                    @Override
+                    public void triple(Triple triple) {
+                        List<Triple> batch = current.get(0);
+                        batch.add(triple);
+                        if (batch.size() == BATCH_SIZE) {
+                            put(queue, new Batch(key, index, batch, false, null));
+                            current.set(0, new ArrayList<Triple>(BATCH_SIZE));
+                        }
+                    }
+                });
+                last = new Batch(key, index, current.get(0), true, null);
+            }
+        } catch (Exception e) {
+            last = new Batch(key, index, Collections.<Triple>emptyList(), true, e);
+        }
+        put(queue, last);
+    }
+
+    private Memento mementoAt(String key, DateTime at) throws IOException {
+        return client.getMementos(repository, key).floor(at);
+    }
+
+    private static void put(BlockingQueue<Batch> queue, Batch batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the writer.", e);
+        }
+    }
+
+    /* the single consumer of the queue, it also keeps the progress */
+    private class BatchWriter implements Runnable {
+
+        private final BlockingQueue<Batch> queue;
+
+        private final StreamRDF sink;
+
+        private final Map<Integer, String> done = new HashMap<>();
+
+        private final Map<String, Long> counts = new HashMap<>();
+
+        private int next;
+
+        /* the resume key must not pass a failed key */
+        private int firstFailure = Integer.MAX_VALUE;
+
+        private volatile RuntimeException error;
+
+        BatchWriter(BlockingQueue<Batch> queue, StreamRDF sink) {
+            this.queue = queue;
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = queue.take()) != Batch.END) {
+                    /* after a failure the queue is drained so no worker blocks */
+                    if (error == null && batch.triples != null) {
+                        try {
+                            write(batch);
+                        } catch (RuntimeException e) {
+                            L.error("Failed writing the snapshot of " + repository.getName(), e);
+                            error = e;
+                        }
+                    }
+                    if (batch.last) {
+                        finish(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(Batch batch) {
+            if (namedGraphs) {
+                Node graph = NodeFactory.createURI(batch.key);
+                for (Triple t : batch.triples) {
+                    sink.quad(new Quad(graph, t));
+                }
+            } else {
+                for (Triple t : batch.triples) {
+                    sink.triple(t);
+                }
+            }
+            triples += batch.triples.size();
+            Long count = counts.get(batch.key);
+            counts.put(batch.key, (count == null ? 0 : count) + batch.triples.size());
+        }
+
+        private void finish(Batch batch) {
+            Long count = counts.remove(batch.key);
+            if (error != null && batch.error == null) {
+                return;
+            }
+            if (batch.error != null) {
+                L.error("Failed to export " + batch.key, batch.error);
+                failedKeys.put(batch.key, batch.error);
+                if (count != null && count > 0) {
+                    L.warn("The dump holds " + count + " triples of the failed key " + batch.key);
+                    partialKeys.put(batch.key, count);
+                }
+                firstFailure = Math.min(firstFailure, batch.index);
+                listener.keyFailed(batch.key, batch.error);
+            } else if (batch.triples == null) {
+                keysSkipped++;
+                listener.keySkipped(batch.key);
+            } else {
+                keysExported++;
+                listener.keyExported(batch.key, count == null ? 0 : count);
+            }
+
+            if (batch.index < firstFailure) {
+                done.put(batch.index, batch.key);
+            }
+            while (done.containsKey(next)) {
+                resumeKey = done.remove(next++);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mirrors a {@link Repository} incrementally into a {@link Sink}.
+ * <p>
+ * A local state file holds the datetime of the last applied {@link Memento} of every key,
+ * as the seconds since 1970-01-01T00:00:00 in the time of tailr.
+ * A run lists the keys and their timemaps and hands only the deltas of newer mementos to the sink,
+ * so the number of fetched deltas depends on the changes since the last run. Keys are
+ * synchronized in parallel, the deltas of one key are applied one after another in datetime order.
+ * <p>
+ * If the sink or a request fails for a key, the key keeps the state of its last applied
+ * delta and is continued by the next run. The state is saved regularly and at the end of a run.
+ */
+public class RepositorySynchronizer {
+
+    private static Logger L = LogManager.getLogger(RepositorySynchronizer.class);
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * Receives the changes of the mirrored repository.
+     * Deltas of different keys may be applied concurrently.
+     */
+    public interface Sink {
+
+        /**
+         * Applies the delta of a memento. For every key this is called in datetime order.
+         *
+         * @param m     the memento
+         * @param delta the delta to the memento before
+         * @throws IOException if the delta can not be applied, the key is retried by the next run
+         */
+        void apply(Memento m, Delta delta) throws IOException;
+    }
+
+    /**
+     * Gets a sink applying the deltas to a local dataset with one named graph per key.
+     *
+     * @param dataset the mirror
+     * @return the sink
+     */
+    public static Sink datasetSink(final DatasetGraph dataset) {
+        return (m, delta) -> {
+            /* a dataset is not necessarily safe for concurrent writers */
+            synchronized (dataset) {
+                delta.applyTo(dataset, NodeFactory.createURI(m.getKey()));
+            }
+        };
+    }
+
+    private final TailrClient client;
+
+    private final Repository repository;
+
+    private final Path stateFile;
+
+    /* the seconds of the last applied memento by key, as encoded by DatetimeCodec */
+    private final Map<String, Long> state = new ConcurrentHashMap<>();
+
+    private final Map<String, Exception> failedKeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong mementosApplied = new AtomicLong();
+
+    private final AtomicLong keysChanged = new AtomicLong();
+
+    private final AtomicLong keysFailed = new AtomicLong();
+
+    private int parallelism = PutOptions.DEFAULT_PARALLELISM;
+
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /**
+     * Instantiates a new synchronizer and loads the state of previous runs.
+     *
+     * @param client     the client used for the requests
+     * @param repository the mirrored repository
+     * @param stateFile  the file holding the state, created by the first run
+     * @throws IOException if an existing state file can not be read
+     */
+    public RepositorySynchronizer(TailrClient client, Repository repository, Path stateFile) throws IOException {
+        this.client = client;
+        this.repository = repository;
+        this.stateFile = stateFile;
+        load();
+    }
+
+    /**
+     * Sets the number of keys synchronized at a time.
+     *
+     * @param parallelism the number of concurrent keys
+     * @return this synchronizer
+     */
+    public RepositorySynchronizer parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one key has to be synchronized at a time.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets after how many changed keys the state is saved during a run.
+     *
+     * @param checkpointInterval the number of changed keys between two saves
+     * @return this synchronizer
+     */
+    public RepositorySynchronizer checkpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval has to be positive.");
+        }
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    /**
+     * Gets the datetime of the last applied memento of a key.
+     *
+     * @param key the key
+     * @return the datetime or null if nothing was applied yet
+     */
+    public DateTime getHighWaterMark(String key) {
+        Long seconds = state.get(key);
+        return seconds == null ? null : DatetimeCodec.toDateTime(seconds);
+    }
+
+    public long getMementosApplied() {
+        return mementosApplied.get();
+    }
+
+    /**
+     * Gets the number of keys of the last run with at least one applied delta,
+     * including failed keys which applied some deltas before the failure.
+     *
+     * @return the number of changed keys
+     */
+    public long getKeysChanged() {
+        return keysChanged.get();
+    }
+
+    public long getKeysFailed() {
+        return keysFailed.get();
+    }
+
+    public Map<String, Exception> getFailedKeys() {
+        return Collections.unmodifiableMap(failedKeys);
+    }
+
+    /**
+     * Runs one synchronization and saves the state.
+     *
+     * @param sink the receiver of the deltas
+     * @throws IOException if the key index can not be read or the state can not be saved
+     */
+    public void sync(final Sink sink) throws IOException {
+        failedKeys.clear();
+        mementosApplied.set(0);
+        keysChanged.set(0);
+        keysFailed.set(0);
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                new DaemonThreadFactory("tailr-sync-" + repository.getName()));
+        final Semaphore slots = new Semaphore(parallelism * 2);
+        try (RepositoryKeyIterator keys = client.iterateRepositoryKeys(repository)) {
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                slots.acquire();
+                workers.execute(() -> {
+                    try {
+                        syncKey(key, sink);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while synchronizing " + repository.getName());
+        } finally {
+            workers.shutdown();
+            try {
+                while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                    L.debug("Waiting for the synchronization of " + repository.getName());
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            save();
+        }
+        L.info("Synchronized " + repository.getName() + ": " + mementosApplied.get() + " mementos of "
+                + keysChanged.get() + " keys applied, " + keysFailed.get() + " keys failed");
+    }
+
+    /* apply the newer mementos of one key in order, the mark follows every applied delta */
+    private void syncKey(String key, Sink sink) {
+        final Long mark = state.get(key);
+        final List<Memento> newer = new ArrayList<>();
+        int applied = 0;
+        try {
+            client.getMementos(repository, key, m -> {
+                if (mark == null || m.getSeconds() > mark) {
+                    newer.add(m);
+                }
+            });
+            newer.sort((a, b) -> Long.compare(a.getSeconds(), b.getSeconds()));
+
+            for (Memento m : newer) {
+                sink.apply(m, client.getDelta(m));
+                state.put(key, m.getSeconds());
+                mementosApplied.incrementAndGet();
+                applied++;
+            }
+        } catch (Exception e) {
+            L.error("Failed to synchronize " + key, e);
+            failedKeys.put(key, e);
+            keysFailed.incrementAndGet();
+        }
+
+        if (applied > 0 && keysChanged.incrementAndGet() % checkpointInterval == 0) {
+            try {
+                save();
+            } catch (IOException e) {
+                L.warn("Failed to save the synchronization state, retrying at the end of the run.", e);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            state.put(key, parseMark(key, properties.getProperty(key)));
+        }
+    }
+
+    /* the seconds of a mark as encoded by DatetimeCodec */
+    private long parseMark(String key, String mark) throws IOException {
+        try {
+            return Long.parseLong(mark);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid mark " + mark + " of " + key + " in the state file " + stateFile, e);
+        }
+    }
+
+    /* write aside and move, so a crash never leaves a partial state */
+    private synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> e : state.entrySet()) {
+            properties.setProperty(e.getKey(), Long.toString(e.getValue()));
+        }
+
+        Path dir = stateFile.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "sync", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, "tailr synchronization state of " + repository.getUser() + "/" + repository.getName());
+        }
+        Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
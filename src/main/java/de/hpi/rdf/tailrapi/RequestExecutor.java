@@ -0,0 +1,446 @@
+package de.hpi.rdf.tailrapi;
+
+import de.hpi.rdf.tailrapi.MetricsRecorder.Endpoint;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the requests of a client on a {@link ConnectionPool}.
+ * <p>
+ * Every request gets connect and read timeouts and has to pass a token bucket
+ * limiting the request rate (off by default) and an adaptive concurrency limit.
+ * The concurrency limit shrinks when responses are slow or the server answers with 429 or 5xx,
+ * and grows again while the server keeps up.
+ * <p>
+ * Failed requests are retried with exponential backoff and full jitter. Reading requests
+ * (GET, HEAD, OPTIONS) and deletes are retried after connection failures and 429, 502, 503 and 504.
+ * A put creates a new memento version, it is only retried if the server certainly did not
+ * process it, i.e. it could not connect or answered with 429 or 503. Requests with a body
+ * which can not be repeated are never retried. A Retry-After header is respected.
+ * <p>
+ * The settings can be changed while requests are running, the current state can be read
+ * to tune the throughput under load. Latencies, sizes and retries are reported to a {@link MetricsRecorder}.
+ */
+public class RequestExecutor {
+
+    private static Logger L = LogManager.getLogger(RequestExecutor.class);
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    public static final long DEFAULT_BACKOFF_MILLIS = 200;
+
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10000;
+
+    public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 2000;
+
+    private static RequestExecutor defaultExecutor;
+
+    private final ConnectionPool pool;
+
+    private final TokenBucket bucket = new TokenBucket(0, 1);
+
+    private final AdaptiveLimit limit;
+
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private volatile long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+
+    private volatile long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    private volatile long latencyThresholdMillis = DEFAULT_LATENCY_THRESHOLD_MILLIS;
+
+    private volatile MetricsRecorder metrics = MetricsRecorder.NOOP;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong throttled = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Instantiates a new executor. The concurrency limit starts at
+     * the number of connections the pool allows per host.
+     *
+     * @param pool the pool executing the requests
+     */
+    public RequestExecutor(ConnectionPool pool) {
+        this.pool = pool;
+        this.limit = new AdaptiveLimit(1, pool.getMaxPerRoute(), DEFAULT_LATENCY_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * Gets the executor of the default {@link ConnectionPool}.
+     *
+     * @return the default executor
+     */
+    public static synchronized RequestExecutor getDefault() {
+        ConnectionPool pool = ConnectionPool.getDefault();
+        if (defaultExecutor == null || defaultExecutor.pool != pool) {
+            defaultExecutor = new RequestExecutor(pool);
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Sets the timeouts of requests which do not have their own configuration.
+     *
+     * @param connectTimeoutMillis the timeout for opening a connection
+     * @param readTimeoutMillis    the timeout for waiting on data
+     * @return this executor
+     */
+    public RequestExecutor timeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Limits the request rate.
+     *
+     * @param requestsPerSecond the sustained rate, zero or less for no limit
+     * @param burst             the number of requests which may be sent at once
+     * @return this executor
+     */
+    public RequestExecutor rateLimit(double requestsPerSecond, int burst) {
+        bucket.setRate(requestsPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Sets the range of the adaptive concurrency limit.
+     *
+     * @param min the lowest limit
+     * @param max the highest limit
+     * @return this executor
+     */
+    public RequestExecutor concurrency(int min, int max) {
+        limit.setBounds(min, max);
+        return this;
+    }
+
+    /**
+     * Sets the response time above which the server is considered overloaded.
+     *
+     * @param latencyThresholdMillis the response time
+     * @return this executor
+     */
+    public RequestExecutor latencyThreshold(long latencyThresholdMillis) {
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        return this;
+    }
+
+    /**
+     * Sets how failed requests are retried.
+     *
+     * @param maxRetries       the number of retries, zero to disable them
+     * @param backoffMillis    the base of the exponential backoff
+     * @param maxBackoffMillis the longest wait before a retry
+     * @return this executor
+     */
+    public RequestExecutor retries(int maxRetries, long backoffMillis, long maxBackoffMillis) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Sets the receiver of the request measurements.
+     *
+     * @param metrics the recorder or null to drop the measurements
+     * @return this executor
+     */
+    public RequestExecutor metrics(MetricsRecorder metrics) {
+        this.metrics = metrics == null ? MetricsRecorder.NOOP : metrics;
+        return this;
+    }
+
+    public MetricsRecorder getMetrics() {
+        return metrics;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    public double getRateLimit() {
+        return bucket.getRate();
+    }
+
+    public double getConcurrencyLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return limit.getInFlight();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Executes a request. A response with an error status is returned
+     * once the retries are used up.
+     *
+     * @param request the request
+     * @return the response which has to be closed by the caller, never null
+     * @throws IOException if the request fails after all retries
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        return execute(request, Endpoint.OTHER);
+    }
+
+    /**
+     * Executes a request and records its measurements for the given endpoint.
+     *
+     * @param request  the request
+     * @param endpoint the kind of request
+     * @return the response which has to be closed by the caller, never null
+     * @throws IOException if the request fails after all retries
+     * @see #execute(HttpUriRequest)
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request, Endpoint endpoint) throws IOException {
+        MetricsRecorder metrics = this.metrics;
+        configure(request);
+        boolean idempotent = isIdempotent(request);
+        boolean repeatable = isRepeatable(request);
+
+        for (int attempt = 0; ; attempt++) {
+            acquire(request);
+            requests.incrementAndGet();
+            long sent = sentBytes(request);
+            if (sent > 0) {
+                metrics.bytesSent(endpoint, sent);
+            }
+            long start = System.nanoTime();
+
+            CloseableHttpResponse response;
+            try {
+                response = pool.getHttpClient().execute(request);
+            } catch (IOException e) {
+                limit.release(true);
+                metrics.failure(endpoint);
+                boolean notSent = e instanceof ConnectException || e instanceof ConnectTimeoutException;
+                if (attempt < maxRetries && repeatable && (idempotent || notSent)) {
+                    L.warn("Retrying " + request.getMethod() + " " + request.getURI() + " after " + e);
+                    metrics.retry(endpoint);
+                    retry(request, backoff(attempt));
+                    continue;
+                }
+                failures.incrementAndGet();
+                throw e;
+            }
+
+            int status = response.getStatusLine().getStatusCode();
+            long latencyNanos = System.nanoTime() - start;
+            long latencyMillis = latencyNanos / 1000000;
+            metrics.request(endpoint, status, latencyNanos);
+            boolean rejected = status == 429 || status == HttpStatus.SC_SERVICE_UNAVAILABLE;
+            if (rejected) {
+                throttled.incrementAndGet();
+            }
+            limit.release(status == 429 || status >= 500 || latencyMillis > latencyThresholdMillis);
+
+            boolean retryable = rejected || (idempotent
+                    && (status == HttpStatus.SC_BAD_GATEWAY || status == HttpStatus.SC_GATEWAY_TIMEOUT));
+            if (retryable && attempt < maxRetries && repeatable) {
+                long wait = Math.max(backoff(attempt), retryAfter(response));
+                L.warn("Retrying " + request.getMethod() + " " + request.getURI() + " after " + response.getStatusLine());
+                metrics.retry(endpoint);
+                try {
+                    EntityUtils.consume(response.getEntity());
+                } finally {
+                    response.close();
+                }
+                retry(request, wait);
+                continue;
+            }
+            if (status >= 500) {
+                failures.incrementAndGet();
+            }
+            if (metrics != MetricsRecorder.NOOP && response.getEntity() != null) {
+                response.setEntity(new CountingEntity(response.getEntity(), metrics, endpoint));
+            }
+            return response;
+        }
+    }
+
+    private void acquire(HttpUriRequest request) throws InterruptedIOException {
+        try {
+            bucket.acquire();
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send " + request.getURI());
+        }
+    }
+
+    private void retry(HttpUriRequest request, long waitMillis) throws InterruptedIOException {
+        retries.incrementAndGet();
+        if (request instanceof HttpRequestBase) {
+            ((HttpRequestBase) request).reset();
+        }
+        try {
+            Thread.sleep(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + request.getURI());
+        }
+    }
+
+    /* full jitter: a random wait up to the exponential backoff */
+    private long backoff(int attempt) {
+        long cap = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 30));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /* Retry-After in seconds or as http date, limited to the longest backoff */
+    private long retryAfter(CloseableHttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null) {
+            return 0;
+        }
+        long millis;
+        try {
+            millis = Long.parseLong(header.getValue().trim()) * 1000;
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(header.getValue());
+            millis = date == null ? 0 : date.getTime() - System.currentTimeMillis();
+        }
+        return Math.max(0, Math.min(maxBackoffMillis, millis));
+    }
+
+    /* requests with an own configuration keep it, also used by the async client */
+    void configure(HttpUriRequest request) {
+        if (request instanceof HttpRequestBase && ((HttpRequestBase) request).getConfig() == null) {
+            ((HttpRequestBase) request).setConfig(RequestConfig.custom()
+                    .setConnectTimeout(connectTimeoutMillis)
+                    .setConnectionRequestTimeout(connectTimeoutMillis)
+                    .setSocketTimeout(readTimeoutMillis)
+                    .build());
+        }
+    }
+
+    private static long sentBytes(HttpUriRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null ? 0 : entity.getContentLength();
+        }
+        return 0;
+    }
+
+    private static boolean isIdempotent(HttpUriRequest request) {
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method) || "DELETE".equals(method);
+    }
+
+    private static boolean isRepeatable(HttpUriRequest request) {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return true;
+        }
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        return entity == null || entity.isRepeatable();
+    }
+
+    /* reports the number of bytes read from a response once its content is closed */
+    private static class CountingEntity extends HttpEntityWrapper {
+
+        private final MetricsRecorder metrics;
+
+        private final Endpoint endpoint;
+
+        CountingEntity(HttpEntity entity, MetricsRecorder metrics, Endpoint endpoint) {
+            super(entity);
+            this.metrics = metrics;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                private long count;
+
+                private boolean reported;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        count++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        count += n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(n);
+                    count += skipped;
+                    return skipped;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!reported) {
+                        reported = true;
+                        metrics.bytesReceived(endpoint, count);
+                    }
+                    super.close();
+                }
+            };
+        }
+    }
+}
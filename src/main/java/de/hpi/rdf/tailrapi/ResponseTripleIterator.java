@@ -0,0 +1,82 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.lang.RiotParsers;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the triples of a memento while its N-Triples body is read.
+ * <p>
+ * The iterator holds the http connection. It is released once the
+ * iterator is exhausted, fails or is closed.
+ */
+class ResponseTripleIterator extends NiceIterator<Triple> {
+
+    private static Logger L = LogManager.getLogger(ResponseTripleIterator.class);
+
+    private final CloseableHttpResponse response;
+
+    private final Iterator<Triple> triples;
+
+    private boolean closed;
+
+    ResponseTripleIterator(CloseableHttpResponse response) throws IOException {
+        this.response = response;
+        HttpEntity entity = response.getEntity();
+        this.triples = entity == null ? Collections.<Triple>emptyIterator() : iterate(entity.getContent());
+    }
+
+    /* a pull parser over n-triples, no thread is needed */
+    static Iterator<Triple> iterate(InputStream in) {
+        return RiotParsers.createIteratorNTriples(in, StreamRDFLib.sinkNull());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        try {
+            boolean more = triples.hasNext();
+            if (!more) {
+                close();
+            }
+            return more;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Triple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return triples.next();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            response.close();
+        } catch (IOException e) {
+            L.warn("Failed to release the connection of a memento.", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.hpi.rdf.tailrapi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces concurrent identical reads. The first caller of a key runs the request,
+ * callers arriving while it is in flight wait for it and get its result or its exception.
+ * Nothing is kept after the request completed, so this is no cache.
+ * <p>
+ * Mutable results are copied for every waiting caller, so callers never share an instance.
+ *
+ * @param <K> the key of a request, e.g. its URI
+ * @param <V> the result type
+ */
+class SingleFlight<K, V> {
+
+    /**
+     * A request of the client.
+     *
+     * @param <V> the result type
+     */
+    interface Call<V> {
+
+        V call() throws IOException, URISyntaxException;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    private final UnaryOperator<V> copy;
+
+    private final Runnable joined;
+
+    /**
+     * Instantiates a new single flight for immutable results.
+     *
+     * @param joined called whenever a caller joins a request in flight
+     */
+    SingleFlight(Runnable joined) {
+        this(UnaryOperator.identity(), joined);
+    }
+
+    /**
+     * Instantiates a new single flight.
+     *
+     * @param copy   creates the copy of a result handed to a waiting caller
+     * @param joined called whenever a caller joins a request in flight
+     */
+    SingleFlight(UnaryOperator<V> copy, Runnable joined) {
+        this.copy = copy;
+        this.joined = joined;
+    }
+
+    /**
+     * Runs the call or joins the one in flight for the same key.
+     *
+     * @param key  the key of the request
+     * @param call the request
+     * @return the result of the request
+     * @throws IOException        if the request failed
+     * @throws URISyntaxException if the request failed
+     */
+    V execute(K key, Call<V> call) throws IOException, URISyntaxException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, flight);
+        if (running != null) {
+            joined.run();
+            return copy.apply(await(running));
+        }
+
+        try {
+            V value = call.call();
+            flight.complete(value);
+            return value;
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+        } finally {
+            calls.remove(key, flight);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) throws IOException, URISyntaxException {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof URISyntaxException) {
+                throw (URISyntaxException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Shared request failed.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared request.");
+        }
+    }
+}
@@ -1,52 +1,266 @@
 package de.hpi.rdf.tailrapi;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.inject.Singleton;
+import de.hpi.rdf.tailrapi.MetricsRecorder.Endpoint;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.cache.HeaderConstants;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.BasicHttpEntity;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.util.EntityUtils;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by magnus on 01.06.16.
+ * <p>
+ * A client for one tailr endpoint and credential, created by {@link #builder(String)}.
+ * Its configuration is fixed and all methods are thread-safe, so one client serves all threads
+ * of a tenant. Clients of different tenants share the default connection pool and request executor
+ * unless they are given their own.
  */
-@Singleton
-public class TailrClient implements Tailr {
+public class TailrClient implements Tailr, Closeable {
 
     private static Logger L = LogManager.getLogger(TailrClient.class);
 
     private static final Charset UTF8 = StandardCharsets.UTF_8;
 
-    private static TailrClient instance;
+    /* the clients handed out by getInstance, by their configuration */
+    private static final Map<List<Object>, TailrClient> instances = new ConcurrentHashMap<>();
 
-    private URI tailrUri;
+    private final URI tailrUri;
 
-    private String user;
+    private final String user;
 
-    private String token;
+    private final String token;
 
-    private boolean privateRepo;
+    private final boolean privateRepo;
+
+    private final ConnectionPool connectionPool;
+
+    private final RequestExecutor executor;
+
+    /* a pool created for this client alone is closed with it */
+    private final boolean ownsConnectionPool;
+
+    private volatile MementoCache cache;
+
+    private final TimemapCache timemaps = new TimemapCache();
+
+    /* cleared once tailr answers a time gate request without a Memento-Datetime */
+    private volatile boolean timegateDatetime = true;
+
+    /* concurrent identical reads share one request */
+    private final SingleFlight<String, TimeMap> timemapFlights = new SingleFlight<>(() -> coalesced(Endpoint.TIMEMAP));
+
+    private final SingleFlight<String, Long> latestFlights = new SingleFlight<>(() -> coalesced(Endpoint.LATEST));
+
+    private final SingleFlight<String, Delta> deltaFlights = new SingleFlight<>(Delta::copy, () -> coalesced(Endpoint.DELTA));
+
+    private final SingleFlight<String, byte[]> contentFlights = new SingleFlight<>(() -> coalesced(Endpoint.RESOLVE));
+
+    /**
+     * Builds clients. Unless configured otherwise, a client uses the default connection pool
+     * and request executor shared by all clients.
+     */
+    public static class Builder {
+
+        private final String tailrUri;
+
+        private String user;
+
+        private String token = "";
+
+        private boolean privateRepo;
+
+        private ConnectionPool connectionPool;
+
+        private RequestExecutor executor;
+
+        private int maxTotal;
+
+        private int maxPerRoute;
+
+        private MementoCache cache;
+
+        private Builder(String tailrUri) {
+            this.tailrUri = tailrUri;
+        }
+
+        /**
+         * Sets the user whose repositories are listed by {@link TailrClient#getUserRepositories()}.
+         *
+         * @param user the tailr user
+         * @return this builder
+         */
+        public Builder user(String user) {
+            this.user = user;
+            return this;
+        }
+
+        /**
+         * Sets the token sent with writes, and with reads of private repositories.
+         *
+         * @param token the authentication token
+         * @return this builder
+         */
+        public Builder token(String token) {
+            this.token = token;
+            return this;
+        }
+
+        /**
+         * Sets whether reads have to be authenticated.
+         *
+         * @param privateRepo true to send the token with every request
+         * @return this builder
+         */
+        public Builder privateRepo(boolean privateRepo) {
+            this.privateRepo = privateRepo;
+            return this;
+        }
+
+        /**
+         * Shares a connection pool with other clients. The pool is not closed with the client.
+         *
+         * @param connectionPool the pool
+         * @return this builder
+         */
+        public Builder connectionPool(ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * Shares a request executor, and so its pool, limits and metrics, with other clients.
+         * The executor is not closed with the client.
+         *
+         * @param executor the executor
+         * @return this builder
+         */
+        public Builder requestExecutor(RequestExecutor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Gives the client a connection pool of its own, which is closed with the client.
+         *
+         * @param maxTotal    the maximum number of connections
+         * @param maxPerRoute the maximum number of connections to the tailr host
+         * @return this builder
+         */
+        public Builder connections(int maxTotal, int maxPerRoute) {
+            this.maxTotal = maxTotal;
+            this.maxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        /**
+         * Plugs in a cache. A cache may be shared by clients of the same endpoint and token,
+         * clients with different tokens should not share one, since it would serve private content to both.
+         *
+         * @param cache the cache
+         * @return this builder
+         * @see TailrClient#setCache(MementoCache)
+         */
+        public Builder cache(MementoCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Creates the client.
+         *
+         * @return the new client
+         * @throws URISyntaxException       if the base URI is not valid
+         * @throws IllegalArgumentException if more than one source of connections is configured
+         */
+        public TailrClient build() throws URISyntaxException {
+            int sources = (connectionPool == null ? 0 : 1) + (executor == null ? 0 : 1) + (maxTotal == 0 ? 0 : 1);
+            if (sources > 1) {
+                throw new IllegalArgumentException("Configure either a connection pool, a request executor or connections.");
+            }
+            URI uri = new URI(tailrUri.endsWith("/") ? tailrUri : tailrUri + "/");
+            RequestExecutor e = executor;
+            boolean owned = false;
+            if (e == null && maxTotal > 0) {
+                e = new RequestExecutor(new ConnectionPool(maxTotal, maxPerRoute, ConnectionPool.DEFAULT_KEEP_ALIVE_MILLIS,
+                        ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS));
+                owned = true;
+            } else if (e == null) {
+                e = connectionPool == null || connectionPool == ConnectionPool.getDefault()
+                        ? RequestExecutor.getDefault() : new RequestExecutor(connectionPool);
+            }
+            TailrClient client = new TailrClient(uri, user, token, privateRepo, e, owned);
+            client.cache = cache;
+            return client;
+        }
+    }
+
+    /**
+     * Starts building a client.
+     *
+     * @param tailrUri the base URI for tailr, e.g. <code>http://tailr.s16a.org/</code>
+     * @return the builder
+     */
+    public static Builder builder(String tailrUri) {
+        return new Builder(tailrUri);
+    }
 
     /**
      * Get the test instance.
@@ -64,26 +278,51 @@ public class TailrClient implements Tailr {
      * @param tailrUri the base URI for tailr
      * @param user     the tailr user
      * @param token    the authentication token
-     * @return a new instance or an old one
+     * @return the instance with this configuration, created on the first call
      * @throws URISyntaxException if the provided base URI is not valid
+     * @deprecated use {@link #builder(String)}
      */
+    @Deprecated
     public static TailrClient getInstance(String tailrUri, String user, String token, boolean privateRepo) throws URISyntaxException {
-        if (instance == null) {
-            try {
-                instance = new TailrClient(tailrUri, user, token, privateRepo);
-            } catch (URISyntaxException e) {
-                L.error("Unable to parse tailr base URI " + tailrUri, e);
-                throw new URISyntaxException(tailrUri, "Unale to parse tailr base URI " + e.getMessage());
-            }
+        return getInstance(tailrUri, user, token, privateRepo, ConnectionPool.getDefault());
+    }
+
+    /**
+     * Gets an instance of the tailr client which uses the given connection pool.
+     * Every configuration gets its own instance, which is kept until it is closed.
+     *
+     * @param tailrUri       the base URI for tailr
+     * @param user           the tailr user
+     * @param token          the authentication token
+     * @param connectionPool the pool used for all requests
+     * @return the instance with this configuration, created on the first call
+     * @throws URISyntaxException if the provided base URI is not valid
+     * @deprecated use {@link #builder(String)}
+     */
+    @Deprecated
+    public static TailrClient getInstance(String tailrUri, String user, String token, boolean privateRepo,
+                                          ConnectionPool connectionPool) throws URISyntaxException {
+        final URI uri;
+        try {
+            uri = new URI(tailrUri);
+        } catch (URISyntaxException e) {
+            L.error("Unable to parse tailr base URI " + tailrUri, e);
+            throw new URISyntaxException(tailrUri, "Unable to parse tailr base URI " + e.getMessage());
         }
-        return instance;
+        return instances.computeIfAbsent(Arrays.asList(tailrUri, user, token, privateRepo, connectionPool),
+                k -> new TailrClient(uri, user, token, privateRepo, connectionPool == ConnectionPool.getDefault()
+                        ? RequestExecutor.getDefault() : new RequestExecutor(connectionPool), false));
     }
 
-    private TailrClient(String tailrUri, String user, String token, boolean privateRepo) throws URISyntaxException {
-        this.tailrUri = new URI(tailrUri);
+    private TailrClient(URI tailrUri, String user, String token, boolean privateRepo,
+                        RequestExecutor executor, boolean ownsConnectionPool) {
+        this.tailrUri = tailrUri;
         this.user = user;
         this.token = token;
         this.privateRepo = privateRepo;
+        this.connectionPool = executor.getConnectionPool();
+        this.executor = executor;
+        this.ownsConnectionPool = ownsConnectionPool;
     }
 
     public URI getTailrUri() {
@@ -102,15 +341,57 @@ public class TailrClient implements Tailr {
         return privateRepo;
     }
 
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
     /**
-     * Close the tailr client. Actually this only
-     * removes the pointer to the client instance.
+     * Gets the executor of all requests of this client. Its limits, timeouts
+     * and retries can be tuned while the client is in use.
+     *
+     * @return the request executor
      */
+    public RequestExecutor getRequestExecutor() {
+        return executor;
+    }
+
+    public MementoCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Plugs a cache into the client. Content and deltas of mementos read from
+     * a timemap by this client are then served from the cache.
+     *
+     * @param cache the cache or null to disable caching
+     */
+    public void setCache(MementoCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Closes the client. A connection pool created for this client alone is closed,
+     * shared pools and executors stay open. An instance of {@link #getInstance(String, String, String, boolean)}
+     * is forgotten, so the next call creates a new one.
+     */
+    @Override
     public void close() {
-        instance = null;
+        instances.values().remove(this);
+        if (ownsConnectionPool) {
+            connectionPool.close();
+        }
+    }
+
+    /* base uri of a repository, e.g. http://tailr.s16a.org/api/user/repo */
+    String getRepositoryUri(Repository repo) {
+        return tailrUri.toString() + "api/" + repo.getUser() + "/" + repo.getName();
     }
 
-    private HttpGet getGet(String url) {
+    String getKeyUri(Repository repo, String key) throws UnsupportedEncodingException {
+        return getRepositoryUri(repo) + "?key=" + URLEncoder.encode(key, UTF8.name());
+    }
+
+    HttpGet getGet(String url) {
         HttpGet request = new HttpGet(url);
         if (privateRepo) {
             request.addHeader(HeaderConstants.AUTHORIZATION, "token " + this.token);
@@ -119,37 +400,34 @@ public class TailrClient implements Tailr {
         return request;
     }
 
-    private HttpPut getAuthPut(String url) {
+    HttpPut getAuthPut(String url) {
         HttpPut request = new HttpPut(url);
         request.addHeader(HeaderConstants.AUTHORIZATION, "token " + this.token);
         request.addHeader("Content-Type", "application/n-triples");
         return request;
     }
 
-    private HttpResponse getResponse(HttpUriRequest request) {
-        HttpClient httpClient = HttpClients.custom().build();
+    /* the caller has to close the response to release the connection */
+    private CloseableHttpResponse getResponse(HttpUriRequest request, Endpoint endpoint) throws IOException {
+        L.debug("Requesting: {} {}", request.getMethod(), request.getURI());
+        CloseableHttpResponse response = executor.execute(request, endpoint);
+        L.debug("Response state: {}", response.getStatusLine());
 
-        try {
-            L.info("Requesting: " + request.getMethod() + " " + request.getURI());
-            HttpResponse response = httpClient.execute(request);
-            L.info("Response state: " + response.getStatusLine());
+        return response;
+    }
 
-            return response;
-        } catch (IOException e) {
-            L.error("HTTP request failed. Reason: ", e);
-            return null;
-        }
+    private JsonNode getResponseAsJson(HttpUriRequest request, Endpoint endpoint) throws IOException {
+        return readJson(request, endpoint, TailrJson.MAPPER::readTree);
     }
 
-    private JsonNode getResponseAsJson(HttpUriRequest request) throws IOException {
+    /* parse the json body straight from the response stream */
+    private <T> T readJson(HttpUriRequest request, Endpoint endpoint, ContentReader<T> reader) throws IOException {
         request.addHeader("Accept", "application/json");
-        HttpResponse response = getResponse(request);
-        HttpEntity entity = response.getEntity();
-
-        String responseString = null;
-        try {
-            responseString = EntityUtils.toString(entity, UTF8);
-            return (new ObjectMapper()).readTree(responseString);
+        try (CloseableHttpResponse response = getResponse(request, endpoint)) {
+            HttpEntity entity = response.getEntity();
+            try (InputStream in = entity.getContent()) {
+                return reader.read(in);
+            }
         } catch (IOException e) {
             L.error("Failed reading JSON response.", e);
             throw new IOException("Failed reading JSON response.", e);
@@ -165,9 +443,9 @@ public class TailrClient implements Tailr {
 
         HttpGet httpGet = getGet(tailrUri.toString() + "api/" + user);
 
-        JsonNode jsonNode = getResponseAsJson(httpGet);
+        JsonNode jsonNode = getResponseAsJson(httpGet, Endpoint.REPOSITORIES);
 
-        for (JsonNode repoNode: jsonNode.get("repositories").get("list").findValues("")) {
+        for (JsonNode repoNode: jsonNode.get("repositories").get("list")) {
             Repository repo = new Repository(user, repoNode.get("name").textValue());
             repos.add(repo);
         }
@@ -179,25 +457,15 @@ public class TailrClient implements Tailr {
         List<String> keys = new ArrayList<String>();
 
         for (int page = 1; ; page = page + 1) {
-            HttpGet httpGet = getGet(tailrUri.toString() + "api/" + repository.getUser() + "/" + repository.getName() + "?index=true&page=" + page);
-            HttpResponse response = getResponse(httpGet);
-
-            HttpEntity entity = response.getEntity();
-
-            String responseString = null;
             try {
-                responseString = EntityUtils.toString(entity, UTF8);
+                List<String> keyPage = getRepositoryKeyPage(repository, page);
 
                 // termination
-                if (responseString.length() == 0) {
+                if (keyPage.isEmpty()) {
                     break;
                 }
 
-                String[] keysplit = responseString.split("\n");
-
-                for (String key : keysplit) {
-                    keys.add(key);
-                }
+                keys.addAll(keyPage);
             } catch (IOException e) {
                 L.error("Failed to get repository keys on page " + page, e);
                 break;
@@ -207,33 +475,415 @@ public class TailrClient implements Tailr {
         return keys;
     }
 
-    public List<Memento> getMementos(Repository repo, String key) throws IOException {
-        List<Memento> mementos = new ArrayList<>();
+    /**
+     * Iterates lazily over the keys of a repository. While the keys of one
+     * index page are consumed the next pages are already fetched in the background.
+     * A failing page fetch is thrown as {@link java.io.UncheckedIOException} by the iterator.
+     *
+     * @param repository the repository
+     * @return the key iterator, which should be closed if it is not consumed completely
+     */
+    public RepositoryKeyIterator iterateRepositoryKeys(Repository repository) {
+        return iterateRepositoryKeys(repository, RepositoryKeyIterator.DEFAULT_PREFETCH);
+    }
 
-        HttpGet httpGet = getGet(tailrUri.toString() + "api/" + repo.getUser() + "/" + repo.getName() + "?key=" + URLEncoder.encode(key, UTF8.name()) + "&timemap=true");
+    /**
+     * Iterates lazily over the keys of a repository.
+     *
+     * @param repository the repository
+     * @param prefetch   the number of index pages fetched ahead
+     * @return the key iterator, which should be closed if it is not consumed completely
+     */
+    public RepositoryKeyIterator iterateRepositoryKeys(Repository repository, int prefetch) {
+        return new RepositoryKeyIterator(this, repository, prefetch);
+    }
 
-        JsonNode jsonNode = getResponseAsJson(httpGet);
+    /**
+     * Streams the keys of a repository, see {@link #iterateRepositoryKeys(Repository)}.
+     * Closing the stream stops the background fetching.
+     *
+     * @param repository the repository
+     * @return the stream of keys
+     */
+    public Stream<String> streamRepositoryKeys(Repository repository) {
+        RepositoryKeyIterator keys = iterateRepositoryKeys(repository);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(keys,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(keys::close);
+    }
 
-        if (jsonNode.get("mementos") != null) {
-            for (JsonNode mementoNode: jsonNode.get("mementos").get("list")) {
-                if (isPrivate()) {
-                    Memento memento = new Memento(repo, key, mementoNode.get("datetime").textValue(), isPrivate(), getToken());
-                    mementos.add(memento);
+    /* fetch one page of the key index, the body is read line by line */
+    List<String> getRepositoryKeyPage(Repository repository, int page) throws IOException {
+        List<String> keys = new ArrayList<>();
+        HttpGet httpGet = getGet(getRepositoryUri(repository) + "?index=true&page=" + page);
 
-                } else {
-                    Memento memento = new Memento(repo, key, mementoNode.get("datetime").textValue());
-                    mementos.add(memento);
+        try (CloseableHttpResponse response = getResponse(httpGet, Endpoint.INDEX_PAGE)) {
+            HttpEntity entity = response.getEntity();
+            StatusLine status = response.getStatusLine();
+            if (status.getStatusCode() < 200 || status.getStatusCode() >= 300) {
+                EntityUtils.consume(entity);
+                throw new IOException("Failed to get the key index page " + httpGet.getURI() + ". " + status);
+            }
+            if (entity == null) {
+                return keys;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), UTF8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    keys.add(line);
+                }
+            }
+        }
+        return keys;
+    }
 
+    /**
+     * Gets all mementos stored under one key, newest first.
+     * Concurrent calls for the same key share one request.
+     * Every caller gets its own snapshot, which does not change afterwards.
+     * The mementos are created when they are accessed, the returned list can not be modified.
+     *
+     * @param repo the repository
+     * @param key  the key
+     * @return the mementos
+     * @throws IOException the io exception
+     */
+    public TimeMap getMementos(final Repository repo, final String key) throws IOException {
+        return getTimeMap(repo, key).snapshot();
+    }
+
+    /**
+     * Gets the live time map of a key, shared by all callers of this client. It follows the puts
+     * and deletes of the key done through this client and is replaced in place when the timemap
+     * is fetched again, so its size may change between two calls. Every query method reads one
+     * consistent state, for index based access take a {@link TimeMap#snapshot()}.
+     *
+     * @param repo the repository
+     * @param key  the key
+     * @return the live time map
+     * @throws IOException the io exception
+     */
+    public TimeMap getTimeMap(final Repository repo, final String key) throws IOException {
+        final String timemapUri = getKeyUri(repo, key) + "&timemap=true";
+        return shareIO(timemapFlights, timemapUri, () -> readTimeMap(repo, key, timemapUri));
+    }
+
+    /**
+     * Gets all mementos stored under one key. The mementos are handed
+     * to the consumer newest first, one at a time.
+     * <p>
+     * Timemaps sent with an ETag or Last-Modified header are remembered
+     * and revalidated by a conditional request, so an unchanged timemap is not sent again.
+     * Unlike {@link #getMementos(Repository, String)} this read is never shared with other callers.
+     *
+     * @param repo     the repository
+     * @param key      the key
+     * @param consumer the receiver of the mementos
+     * @throws IOException the io exception
+     */
+    public void getMementos(final Repository repo, final String key, final Consumer<Memento> consumer) throws IOException {
+        for (Memento m : readTimeMap(repo, key, getKeyUri(repo, key) + "&timemap=true")) {
+            consumer.accept(m);
+        }
+    }
+
+    /**
+     * Gets the mementos of many keys. The timemaps are fetched concurrently,
+     * keys asked for by other threads at the same time share their requests.
+     *
+     * @param repo the repository
+     * @param keys the keys
+     * @return the mementos by key, newest first, in the order of the keys
+     * @throws IOException if a timemap can not be fetched
+     */
+    public Map<String, List<Memento>> getMementos(Repository repo, Collection<String> keys) throws IOException {
+        return getMementos(repo, keys, PutOptions.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Gets the mementos of many keys with the given number of concurrent requests.
+     *
+     * @param repo        the repository
+     * @param keys        the keys
+     * @param parallelism the number of timemaps fetched at the same time
+     * @return the mementos by key, newest first, in the order of the keys
+     * @throws IOException if a timemap can not be fetched
+     */
+    public Map<String, List<Memento>> getMementos(final Repository repo, Collection<String> keys, int parallelism)
+            throws IOException {
+        Map<String, List<Memento>> result = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, keys.size()),
+                new DaemonThreadFactory("tailr-timemap-" + repo.getName()));
+        try {
+            Map<String, Future<List<Memento>>> futures = new LinkedHashMap<>();
+            for (final String key : keys) {
+                if (!futures.containsKey(key)) {
+                    futures.put(key, executor.submit(() -> getMementos(repo, key)));
                 }
             }
+            for (Map.Entry<String, Future<List<Memento>>> e : futures.entrySet()) {
+                result.put(e.getKey(), awaitTimemap(e.getValue(), e.getKey()));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        return mementos;
+    private static List<Memento> awaitTimemap(Future<List<Memento>> mementos, String key) throws IOException {
+        try {
+            return mementos.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to get the timemap of " + key, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while getting the timemap of " + key);
+        }
+    }
+
+    /* run a read which can only fail with an io exception or join the identical one in flight */
+    private static <V> V shareIO(SingleFlight<String, V> flights, String key, SingleFlight.Call<V> call) throws IOException {
+        try {
+            return flights.execute(key, call);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URI " + key, e);
+        }
+    }
+
+    private void coalesced(Endpoint endpoint) {
+        executor.getMetrics().coalesced(endpoint);
+    }
+
+    /* read a timemap, revalidating a remembered one, whose time map is then updated in place */
+    private TimeMap readTimeMap(Repository repo, String key, String timemapUri) throws IOException {
+        HttpGet httpGet = getGet(timemapUri);
+        httpGet.addHeader("Accept", "application/json");
+
+        TimemapCache.Entry cached = timemaps.get(timemapUri);
+        if (cached != null) {
+            if (cached.etag != null) {
+                httpGet.addHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached.lastModified != null) {
+                httpGet.addHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
+
+        try (CloseableHttpResponse response = getResponse(httpGet, Endpoint.TIMEMAP)) {
+            if (cached != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                executor.getMetrics().cacheHit(Endpoint.TIMEMAP);
+                EntityUtils.consume(response.getEntity());
+                return cached.timeMap;
+            }
+            StatusLine status = response.getStatusLine();
+            Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+            Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            LongStream.Builder datetimes = LongStream.builder();
+            if (status.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                // a key without versions
+                EntityUtils.consume(response.getEntity());
+            } else if (status.getStatusCode() < 200 || status.getStatusCode() >= 300) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("Failed to get the timemap " + timemapUri + ". " + status);
+            } else {
+                try (InputStream in = response.getEntity().getContent()) {
+                    TailrJson.parseTimemapSeconds(in, datetimes);
+                } catch (IOException e) {
+                    L.error("Failed reading JSON response.", e);
+                    throw new IOException("Failed reading JSON response.", e);
+                }
+            }
+            TimeMap timeMap;
+            if (cached != null) {
+                timeMap = cached.timeMap;
+                timeMap.reset(datetimes.build().toArray());
+            } else {
+                timeMap = new TimeMap(this, repo, key, datetimes.build().toArray());
+            }
+            timemaps.put(timemapUri, new TimemapCache.Entry(etag == null ? null : etag.getValue(),
+                    lastModified == null ? null : lastModified.getValue(), timeMap));
+            return timeMap;
+        }
+    }
+
+    /* create a memento bound to this client, it carries the token for private repos */
+    Memento newMemento(Repository repo, String key, long seconds) {
+        return new Memento(this, repo, key, seconds, null);
+    }
+
+    /**
+     * Resolves the content of a {@link Memento}, using the cache if one is set.
+     * Concurrent resolves of the same memento share one request.
+     *
+     * @param m the memento
+     * @return the graph stored under the memento
+     * @throws IOException        if the memento can not be fetched
+     * @throws URISyntaxException if the memento uri is not valid
+     */
+    public Graph resolve(Memento m) throws IOException, URISyntaxException {
+        Graph g = GraphFactory.createDefaultGraph();
+        if (isCacheable(cache, m)) {
+            resolve(m, StreamRDFLib.graph(g));
+        } else {
+            parse(new ByteArrayInputStream(fetchContent(m.getMementoUri(tailrUri).toASCIIString())), StreamRDFLib.graph(g));
+        }
+        return g;
+    }
+
+    /**
+     * Resolves the content of a {@link Memento} into a sink. The triples are parsed
+     * while the response is read, so no graph is built. With a cache set, the raw
+     * content of an uncached memento is kept for the cache and its fetch is shared
+     * with concurrent callers, otherwise every call streams its own response.
+     *
+     * @param m    the memento
+     * @param sink the receiver of the triples
+     * @throws IOException        if the memento can not be fetched
+     * @throws URISyntaxException if the memento uri is not valid
+     */
+    public void resolve(Memento m, final StreamRDF sink) throws IOException, URISyntaxException {
+        readContent(m, in -> {
+            parse(in, sink);
+            return null;
+        });
+    }
+
+    /* read the raw content of a memento, from the cache if possible */
+    private <T> T readContent(Memento m, ContentReader<T> reader) throws IOException, URISyntaxException {
+        String url = m.getMementoUri(tailrUri).toASCIIString();
+        String auth = privateRepo ? token : null;
+        MementoCache c = cache;
+
+        if (!isCacheable(c, m)) {
+            return fetchMemento(executor, url, auth, reader);
+        }
+
+        byte[] content = c.getContent(m);
+        countCache(Endpoint.RESOLVE, content != null);
+        if (content == null) {
+            content = fetchContent(url);
+            c.putContent(m, content);
+        }
+        return reader.read(new ByteArrayInputStream(content));
+    }
+
+    /* fetch the raw content of a memento, concurrent fetches share one request; the array is never modified */
+    private byte[] fetchContent(final String url) throws IOException, URISyntaxException {
+        final String auth = privateRepo ? token : null;
+        return contentFlights.execute(url, () -> fetchMemento(executor, url, auth, TailrClient::toByteArray));
     }
 
     /**
-     * Gets last stored {@link Memento}. It asks for the latest timestamp
-     * with all mementos and takes the last one
+     * Iterates over the triples of a {@link Memento} while they are read.
+     * The iterator holds a connection until it is exhausted or closed.
+     * Cached content is served from the cache, but the iterator does not fill the cache.
+     *
+     * @param m the memento
+     * @return the triple iterator
+     * @throws IOException        if the memento can not be fetched
+     * @throws URISyntaxException if the memento uri is not valid
+     */
+    public ExtendedIterator<Triple> resolveAsIterator(Memento m) throws IOException, URISyntaxException {
+        MementoCache c = cache;
+        byte[] content = null;
+        if (isCacheable(c, m)) {
+            content = c.getContent(m);
+            countCache(Endpoint.RESOLVE, content != null);
+        }
+        if (content != null) {
+            return WrappedIterator.create(ResponseTripleIterator.iterate(new ByteArrayInputStream(content)));
+        }
+        return iterateMemento(executor, m.getMementoUri(tailrUri).toASCIIString(), privateRepo ? token : null);
+    }
+
+    private void countCache(Endpoint endpoint, boolean hit) {
+        if (hit) {
+            executor.getMetrics().cacheHit(endpoint);
+        } else {
+            executor.getMetrics().cacheMiss(endpoint);
+        }
+    }
+
+    /* only mementos read from a timemap by this client have an exact and immutable datetime */
+    boolean isCacheable(MementoCache c, Memento m) {
+        return c != null && m.getClient() == this;
+    }
+
+    /* fetch the content of a memento, private repos need the token */
+    static <T> T fetchMemento(RequestExecutor executor, String url, String token, ContentReader<T> reader) throws IOException {
+        try (CloseableHttpResponse response = openMemento(executor, url, token)) {
+            HttpEntity entity = response.getEntity();
+            try (InputStream in = entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent()) {
+                return reader.read(in);
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to resolve memento.", e);
+        }
+    }
+
+    static ExtendedIterator<Triple> iterateMemento(RequestExecutor executor, String url, String token) throws IOException {
+        CloseableHttpResponse response = openMemento(executor, url, token);
+        try {
+            return new ResponseTripleIterator(response);
+        } catch (IOException e) {
+            response.close();
+            throw new IOException("Failed to resolve memento.", e);
+        }
+    }
+
+    /* the caller has to close the response */
+    private static CloseableHttpResponse openMemento(RequestExecutor executor, String url, String token) throws IOException {
+        HttpGet request = new HttpGet(url);
+        if (token != null) {
+            request.addHeader(HeaderConstants.AUTHORIZATION, "token " + token);
+        }
+        request.addHeader("Accept", "application/n-triples");
+
+        CloseableHttpResponse response = executor.execute(request, Endpoint.RESOLVE);
+        StatusLine status = response.getStatusLine();
+        if (status.getStatusCode() >= 400) {
+            try {
+                EntityUtils.consume(response.getEntity());
+            } finally {
+                response.close();
+            }
+            throw new HttpException(status.getStatusCode(), status.toString(), null);
+        }
+        return response;
+    }
+
+    static void parse(InputStream in, StreamRDF sink) {
+        RDFDataMgr.parse(sink, in, Lang.N3);
+    }
+
+    static Graph readGraph(InputStream in) {
+        Graph g = GraphFactory.createDefaultGraph();
+        parse(in, StreamRDFLib.graph(g));
+        return g;
+    }
+
+    static byte[] toByteArray(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gets last stored {@link Memento}. It asks the key's time gate for the
+     * Memento-Datetime of the latest version. Only if tailr sends none, the whole
+     * timemap is fetched and the latest memento is taken from it, as for all following calls.
      *
      * @param repo the repository
      * @param key  the key
@@ -241,12 +891,98 @@ public class TailrClient implements Tailr {
      * @throws IOException if an IO error occurred or no memento was found.
      */
     public Memento getLatestMemento(Repository repo, String key) throws IOException {
-        List<Memento> mementos = getMementos(repo, key);
-        //L.info("Got timemap:\n" + prettifyTimemap(mementos));
-        if (mementos.isEmpty()) {
+        Memento latest = findLatestMemento(repo, key);
+        if (latest == null) {
             throw new IOException("No memento found.");
         }
-        return mementos.get(0);
+        return latest;
+    }
+
+    /* the latest memento or null if the key has none */
+    private Memento findLatestMemento(Repository repo, String key) throws IOException {
+        if (timegateDatetime) {
+            final String keyUri = getKeyUri(repo, key);
+            Long seconds = shareIO(latestFlights, keyUri, () -> askTimegate(keyUri));
+            if (seconds != null) {
+                return newMemento(repo, key, seconds);
+            }
+        }
+
+        TimeMap mementos = getTimeMap(repo, key);
+        //L.info("Got timemap:\n" + prettifyTimemap(mementos));
+        return mementos.latest();
+    }
+
+    /* the GMT Memento-Datetime of the latest memento, encoded like the datetimes of a timemap, or null if tailr sends none */
+    private Long askTimegate(String keyUri) throws IOException {
+        HttpHead head = new HttpHead(keyUri);
+        if (privateRepo) {
+            head.addHeader(HeaderConstants.AUTHORIZATION, "token " + this.token);
+        }
+
+        try (CloseableHttpResponse response = getResponse(head, Endpoint.LATEST)) {
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+                Header datetime = response.getFirstHeader("Memento-Datetime");
+                Date date = datetime == null ? null : DateUtils.parseDate(datetime.getValue());
+                if (date != null) {
+                    return Math.floorDiv(date.getTime(), 1000);
+                }
+                timegateDatetime = false;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the {@link Delta} a put of the content would create, without uploading it.
+     * The latest memento is resolved, from the cache if one is set, and compared line by line
+     * with the content. Whitespace and comments are ignored, blank nodes are compared by label.
+     * A key without mementos gets all triples added.
+     *
+     * @param repo    the repository
+     * @param key     the key
+     * @param content the new content in N-Triples
+     * @return the delta between the latest memento and the content
+     * @throws IOException        if the latest memento can not be fetched
+     * @throws URISyntaxException if the key can not be parsed
+     */
+    public Delta computeDelta(Repository repo, String key, String content) throws IOException, URISyntaxException {
+        Delta d = new Delta();
+        computeDelta(repo, key, new StringReader(content), collect(d));
+        return d;
+    }
+
+    /**
+     * Computes the {@link Delta} a put of the file would create, without uploading it.
+     * Neither the file nor the latest memento has to fit into memory, large inputs are
+     * sorted externally in temporary files. The triples are handed to the handler as they are found.
+     *
+     * @param repo    the repository
+     * @param key     the key
+     * @param content the new content in N-Triples
+     * @param handler the receiver of the delta
+     * @throws IOException        if the file or the latest memento can not be read
+     * @throws URISyntaxException if the key can not be parsed
+     * @see #computeDelta(Repository, String, String)
+     */
+    public void computeDelta(Repository repo, String key, Path content, DeltaHandler handler) throws IOException, URISyntaxException {
+        try (Reader reader = Files.newBufferedReader(content, UTF8)) {
+            computeDelta(repo, key, reader, handler);
+        }
+    }
+
+    private void computeDelta(Repository repo, String key, final Reader content, final DeltaHandler handler)
+            throws IOException, URISyntaxException {
+        final NTriplesDiff diff = new NTriplesDiff();
+        Memento latest = findLatestMemento(repo, key);
+        if (latest == null) {
+            diff.diff(new StringReader(""), content, handler);
+            return;
+        }
+        readContent(latest, in -> {
+            diff.diff(new InputStreamReader(in, UTF8), content, handler);
+            return null;
+        });
     }
 
     public StatusLine deleteMemento(Memento m) throws IOException {
@@ -260,15 +996,30 @@ public class TailrClient implements Tailr {
 
         httpDel.addHeader("Authorization", "token " + this.token);
 
-        HttpResponse response = getResponse(httpDel);
-
-        return response.getStatusLine();
+        String timemapUri = getKeyUri(m.getRepository(), m.getKey()) + "&timemap=true";
+        boolean deleted = false;
+        try (CloseableHttpResponse response = getResponse(httpDel, Endpoint.DELETE)) {
+            EntityUtils.consume(response.getEntity());
+            deleted = response.getStatusLine().getStatusCode() == HttpStatus.SC_OK;
+            return response.getStatusLine();
+        } finally {
+            TimemapCache.Entry cached = timemaps.get(timemapUri);
+            if (deleted && cached != null) {
+                cached.timeMap.remove(m.getSeconds());
+            } else {
+                timemaps.invalidate(timemapUri);
+            }
+            MementoCache c = cache;
+            if (c != null) {
+                c.invalidate(m);
+            }
+        }
     }
 
     /**
      * Retrieves a {@link Delta} for a given {@link Memento}.
      * The delta designates the difference between the given memento
-     * and the one before.
+     * and the one before. Concurrent calls for the same memento share one request.
      *
      * @param mem a given memento
      * @return the delta between the given and the one before
@@ -276,18 +1027,155 @@ public class TailrClient implements Tailr {
      * @throws URISyntaxException the uri syntax exception
      */
     public Delta getDelta(Memento mem) throws IOException, URISyntaxException {
-        Delta d = new Delta();
+        MementoCache c = cache;
+        Delta d = null;
+        if (isCacheable(c, mem)) {
+            d = c.getDelta(mem);
+            countCache(Endpoint.DELTA, d != null);
+        }
+        if (d != null) {
+            return d;
+        }
+
+        final String url = mem.getMementoUrl(tailrUri) + "&delta=true";
+        d = deltaFlights.execute(url, () -> {
+            Delta fetched = new Delta();
+            fetchDelta(url, collect(fetched));
+            return fetched;
+        });
+        if (isCacheable(c, mem)) {
+            c.putDelta(mem, d);
+        }
+        return d;
+    }
+
+    /**
+     * Retrieves the {@link Delta} for a given {@link Memento} and hands
+     * its triples to the handler while they are read, no delta is built.
+     * If the delta is cached, it is fully read for the cache and then handed out.
+     *
+     * @param mem     a given memento
+     * @param handler the receiver of the added and removed triples
+     * @throws IOException        the io exception
+     * @throws URISyntaxException the uri syntax exception
+     */
+    public void getDelta(Memento mem, final DeltaHandler handler) throws IOException, URISyntaxException {
+        if (isCacheable(cache, mem)) {
+            Delta d = getDelta(mem);
+            for (String triple : d.getAddedTriples()) {
+                handler.added(triple);
+            }
+            for (String triple : d.getRemovedTriples()) {
+                handler.removed(triple);
+            }
+        } else {
+            fetchDelta(mem.getMementoUrl(tailrUri) + "&delta=true", handler);
+        }
+    }
+
+    private void fetchDelta(String url, final DeltaHandler handler) throws IOException {
+        HttpGet get = getGet(url);
+
+        readJson(get, Endpoint.DELTA, in -> {
+            TailrJson.parseDelta(in, handler);
+            return null;
+        });
+    }
+
+    /* a handler filling the triple lists of a delta */
+    static DeltaHandler collect(final Delta d) {
+        return new DeltaHandler() {
+            @Override
+            public void added(String triple) {
+                d.getAddedTriples().add(triple);
+            }
+
+            @Override
+            public void removed(String triple) {
+                d.getRemovedTriples().add(triple);
+            }
+        };
+    }
 
-        HttpGet get = getGet(mem.getMementoUri(tailrUri) + "&delta=true");
-        JsonNode jsonNode = getResponseAsJson(get);
+    /**
+     * Gets the net {@link Delta} between two versions of a key.
+     * <p>
+     * The deltas of all mementos after <code>from</code> up to and including <code>to</code>
+     * are fetched in parallel and squashed by {@link Delta#compose(Delta...)}. Applied to the
+     * version valid at <code>from</code> the result gives the version valid at <code>to</code>.
+     *
+     * @param repo the repository
+     * @param key  the key
+     * @param from the datetime of the known version
+     * @param to   the datetime of the wanted version
+     * @return the net delta, empty if no memento lies in between
+     * @throws IOException        if the timemap or a delta can not be fetched
+     * @throws URISyntaxException if no valid key was provided
+     */
+    public Delta getDelta(Repository repo, String key, DateTime from, DateTime to) throws IOException, URISyntaxException {
+        return getDelta(repo, key, from, to, PutOptions.DEFAULT_PARALLELISM);
+    }
 
-        for (JsonNode node : jsonNode.get("added")) {
-            d.getAddedTriples().add(node.textValue());
+    /**
+     * Gets the net {@link Delta} between two versions of a key with a given number
+     * of concurrent requests.
+     *
+     * @param repo        the repository
+     * @param key         the key
+     * @param from        the datetime of the known version
+     * @param to          the datetime of the wanted version
+     * @param parallelism the number of deltas fetched at a time
+     * @return the net delta, empty if no memento lies in between
+     * @throws IOException        if the timemap or a delta can not be fetched
+     * @throws URISyntaxException if no valid key was provided
+     * @see #getDelta(Repository, String, DateTime, DateTime)
+     */
+    public Delta getDelta(Repository repo, String key, final DateTime from, final DateTime to, int parallelism)
+            throws IOException, URISyntaxException {
+        final List<Memento> range = new ArrayList<>();
+        getMementos(repo, key, m -> {
+            if (m.getDateTime().isAfter(from) && !m.getDateTime().isAfter(to)) {
+                range.add(m);
+            }
+        });
+        range.sort((a, b) -> a.getDateTime().compareTo(b.getDateTime()));
+        if (range.isEmpty()) {
+            return new Delta();
         }
-        for (JsonNode node : jsonNode.get("deleted")) {
-            d.getRemovedTriples().add(node.textValue());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, range.size()),
+                new DaemonThreadFactory("tailr-delta-" + repo.getName()));
+        try {
+            List<Future<Delta>> futures = new ArrayList<>(range.size());
+            for (final Memento m : range) {
+                futures.add(executor.submit(() -> getDelta(m)));
+            }
+            Delta[] deltas = new Delta[range.size()];
+            for (int i = 0; i < deltas.length; i++) {
+                deltas[i] = await(futures.get(i), range.get(i));
+            }
+            return Delta.compose(deltas);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Delta await(Future<Delta> delta, Memento m) throws IOException, URISyntaxException {
+        try {
+            return delta.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof URISyntaxException) {
+                throw (URISyntaxException) cause;
+            }
+            throw new IOException("Failed to get the delta of " + m.getKey() + " at " + m.getDateTime(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while getting the delta of " + m.getKey());
         }
-        return d;
     }
 
     /**
@@ -318,17 +1206,197 @@ public class TailrClient implements Tailr {
      * @throws URISyntaxException if the key can not be parsed
      */
     public Delta putMemento(Repository repo, String key, String content) throws IOException, URISyntaxException {
-        HttpPut put = getAuthPut(tailrUri.toString() + "api/" + repo.getUser() + "/" + repo.getName()
-                                + "?key=" + URLEncoder.encode(key, UTF8.name()));
-        BasicHttpEntity entity = new BasicHttpEntity();
-        entity.setContent(new ByteArrayInputStream(content.getBytes(UTF8)));
-        put.setEntity(entity);
-
-        HttpResponse response = getResponse(put);
-        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-            return getLatestDelta(repo, key);
+        return putMemento(repo, key, content, PutOptions.defaults());
+    }
+
+    /**
+     * Creates a new {@link Memento} version and
+     * stores the given content to tailr. The delta is only retrieved if
+     * the options ask for it.
+     *
+     * @param repo    the memento repository
+     * @param key     the memento key
+     * @param content the storage content
+     * @param options the put options
+     * @return the delta between the uploaded and previous version or null if not requested
+     * @throws IOException        if the put fails
+     * @throws URISyntaxException if the key can not be parsed
+     */
+    public Delta putMemento(Repository repo, String key, String content, PutOptions options) throws IOException, URISyntaxException {
+        HttpEntity entity = new ByteArrayEntity(content.getBytes(UTF8));
+        if (options.isPutIfChanged()) {
+            return storeIfChanged(repo, key, entity, computeDelta(repo, key, content), options);
+        }
+        return store(repo, key, entity, options);
+    }
+
+    /**
+     * Creates a new {@link Memento} version from a file. The file is sent
+     * with a fixed length straight from its channel, it is never loaded into memory.
+     *
+     * @param repo    the memento repository
+     * @param key     the memento key
+     * @param content the rdf file in N-Triples
+     * @param options the put options
+     * @return the delta between the uploaded and previous version or null if not requested
+     * @throws IOException        if the file can not be read or the put fails
+     * @throws URISyntaxException if the key can not be parsed
+     */
+    public Delta putMemento(Repository repo, String key, Path content, PutOptions options) throws IOException, URISyntaxException {
+        HttpEntity entity = new FileChannelEntity(content);
+        if (options.isPutIfChanged()) {
+            Delta d = new Delta();
+            computeDelta(repo, key, content, collect(d));
+            return storeIfChanged(repo, key, entity, d, options);
+        }
+        return store(repo, key, entity, options);
+    }
+
+    /**
+     * Creates a new {@link Memento} version from a stream. Since the length
+     * is unknown the content is sent chunked. The stream is closed afterwards.
+     *
+     * @param repo    the memento repository
+     * @param key     the memento key
+     * @param content the content in N-Triples
+     * @param options the put options
+     * @return the delta between the uploaded and previous version or null if not requested
+     * @throws IOException        if the stream can not be read or the put fails
+     * @throws URISyntaxException if the key can not be parsed
+     */
+    public Delta putMemento(Repository repo, String key, InputStream content, PutOptions options) throws IOException, URISyntaxException {
+        try (InputStream in = content) {
+            return store(repo, key, new InputStreamEntity(in), options);
+        }
+    }
+
+    /**
+     * Creates a new {@link Memento} version from a channel. File channels are sent
+     * with a fixed length, other channels chunked. The channel is closed afterwards.
+     *
+     * @param repo    the memento repository
+     * @param key     the memento key
+     * @param content the content in N-Triples
+     * @param options the put options
+     * @return the delta between the uploaded and previous version or null if not requested
+     * @throws IOException        if the channel can not be read or the put fails
+     * @throws URISyntaxException if the key can not be parsed
+     */
+    public Delta putMemento(Repository repo, String key, ReadableByteChannel content, PutOptions options) throws IOException, URISyntaxException {
+        try (ReadableByteChannel channel = content) {
+            InputStream in = Channels.newInputStream(channel);
+            long length = -1;
+            if (channel instanceof FileChannel) {
+                FileChannel file = (FileChannel) channel;
+                length = file.size() - file.position();
+            }
+            return store(repo, key, new InputStreamEntity(in, length), options);
+        }
+    }
+
+    /**
+     * Creates new {@link Memento} versions for many keys. The uploads run in parallel
+     * as configured by the options. A failing key does not abort the batch,
+     * its failure is reported in its result.
+     *
+     * @param repo     the memento repository
+     * @param contents the storage content by key
+     * @param options  the put options
+     * @return the result by key
+     */
+    public Map<String, PutResult> putMementos(Repository repo, Map<String, String> contents, PutOptions options) {
+        return putMementos(repo, contents.entrySet().stream(), options);
+    }
+
+    /**
+     * Creates new {@link Memento} versions for a stream of keys and contents.
+     * The stream is consumed lazily, only a few contents ahead of the running uploads are taken from it.
+     *
+     * @param repo     the memento repository
+     * @param contents the pairs of key and storage content
+     * @param options  the put options
+     * @return the result by key
+     */
+    public Map<String, PutResult> putMementos(final Repository repo, Stream<Map.Entry<String, String>> contents,
+                                              final PutOptions options) {
+        final Map<String, PutResult> results = new ConcurrentHashMap<>();
+        final Semaphore slots = new Semaphore(options.getParallelism() * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelism(),
+                new DaemonThreadFactory("tailr-put-" + repo.getName()));
+
+        try {
+            contents.forEach(content -> {
+                slots.acquireUninterruptibly();
+                executor.execute(() -> {
+                    String key = content.getKey();
+                    try {
+                        Delta d = putMemento(repo, key, content.getValue(), options);
+                        results.put(key, PutResult.success(key, d));
+                    } catch (Exception e) {
+                        L.error("Failed to put a new memento version for " + key, e);
+                        results.put(key, PutResult.failure(key, e));
+                    } finally {
+                        slots.release();
+                    }
+                });
+            });
+        } finally {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    L.debug("Waiting for uploads of " + repo.getName());
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        return results;
+    }
+
+    /* upload a new version and fetch its delta if asked for */
+    private Delta store(Repository repo, String key, HttpEntity entity, PutOptions options) throws IOException, URISyntaxException {
+        upload(repo, key, entity, options);
+        return options.isReturnDelta() ? getLatestDelta(repo, key) : null;
+    }
+
+    /* upload only a changed version, the local delta saves fetching it */
+    private Delta storeIfChanged(Repository repo, String key, HttpEntity entity, Delta d, PutOptions options) throws IOException {
+        if (d.isEmpty()) {
+            L.debug("Skipping unchanged upload of {}", key);
+        } else {
+            upload(repo, key, entity, options);
+        }
+        return options.isReturnDelta() ? d : null;
+    }
+
+    private void upload(Repository repo, String key, HttpEntity entity, PutOptions options) throws IOException {
+        HttpPut put = getAuthPut(getKeyUri(repo, key));
+        put.setEntity(options.isCompress() ? new GzipCompressingEntity(entity) : entity);
+
+        StatusLine status;
+        try (CloseableHttpResponse response = getResponse(put, Endpoint.PUT)) {
+            EntityUtils.consume(response.getEntity());
+            status = response.getStatusLine();
+        }
+        if (status.getStatusCode() != HttpStatus.SC_OK) {
+            throw new IOException("Failed to put a new memento version. " + status);
+        }
+        addUploaded(repo, key);
+    }
+
+    /* add the version just put to a remembered time map, asking the time gate instead of fetching the timemap */
+    private void addUploaded(Repository repo, String key) throws IOException {
+        String keyUri = getKeyUri(repo, key);
+        TimemapCache.Entry cached = timemaps.get(keyUri + "&timemap=true");
+        if (cached == null) {
+            return;
+        }
+        Long seconds = timegateDatetime ? askTimegate(keyUri) : null;
+        if (seconds != null) {
+            cached.timeMap.add(seconds);
         } else {
-            throw new IOException("Failed to put a new memento version. " + response.getStatusLine());
+            timemaps.invalidate(keyUri + "&timemap=true");
         }
     }
 
@@ -345,19 +1413,7 @@ public class TailrClient implements Tailr {
      * @throws URISyntaxException if the key can not be parsed
      */
     public Delta putMemento(Repository repo, String key, File content) throws IOException, URISyntaxException {
-        HttpPut put = getAuthPut(tailrUri.toString() + "api/" + repo.getUser() + "/" + repo.getName()
-                + "?key=" + URLEncoder.encode(key, UTF8.name()));
-        BasicHttpEntity entity = new BasicHttpEntity();
-
-        entity.setContent(new FileInputStream(content));
-        put.setEntity(entity);
-
-        HttpResponse response = getResponse(put);
-        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-            return getLatestDelta(repo, key);
-        } else {
-            throw new IOException("Failed to put a new memento version. " + response.getStatusLine());
-        }
+        return putMemento(repo, key, content.toPath(), PutOptions.defaults());
     }
 
     /* prettify the output from tailr */
@@ -0,0 +1,141 @@
+package de.hpi.rdf.tailrapi;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Streaming parsers for the JSON responses of tailr.
+ * <p>
+ * Timemaps and deltas are read token by token straight from the response
+ * stream and handed out as they are read, so no intermediate tree or string is built.
+ * The factory and mapper are thread-safe and shared by all clients.
+ */
+final class TailrJson {
+
+    static final JsonFactory FACTORY = new JsonFactory();
+
+    static final ObjectMapper MAPPER = new ObjectMapper(FACTORY);
+
+    private TailrJson() {
+    }
+
+    /**
+     * Emits the datetime of every memento in a timemap
+     * of the form <code>{"mementos": {"list": [{"datetime": ...}, ...]}}</code>.
+     *
+     * @param in       the timemap json
+     * @param datetime the consumer of the datetimes
+     * @throws IOException if the json is malformed
+     */
+    static void parseTimemap(InputStream in, Consumer<String> datetime) throws IOException {
+        parseTimemap(in, (DatetimeField) parser -> datetime.accept(parser.getText()));
+    }
+
+    /**
+     * Emits the datetime of every memento in a timemap as encoded by {@link DatetimeCodec}.
+     * The datetimes are decoded from the buffer of the parser, no string is created.
+     *
+     * @param in      the timemap json
+     * @param seconds the consumer of the datetimes
+     * @throws IOException if the json or a datetime is malformed
+     */
+    static void parseTimemapSeconds(InputStream in, LongConsumer seconds) throws IOException {
+        parseTimemap(in, (DatetimeField) parser -> {
+            try {
+                seconds.accept(DatetimeCodec.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed timemap. " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /* reads the current datetime value of the parser */
+    private interface DatetimeField {
+
+        void read(JsonParser parser) throws IOException;
+    }
+
+    private static void parseTimemap(InputStream in, DatetimeField datetime) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("mementos".equals(field) && value == JsonToken.START_OBJECT) {
+                    parseMementos(parser, datetime);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /* inside the mementos object, find the list */
+    private static void parseMementos(JsonParser parser, DatetimeField datetime) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("list".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseMemento(parser, datetime);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void parseMemento(JsonParser parser, DatetimeField datetime) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("datetime".equals(field) && value == JsonToken.VALUE_STRING) {
+                datetime.read(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Emits the triples of a delta of the form
+     * <code>{"added": [...], "deleted": [...]}</code>.
+     *
+     * @param in      the delta json
+     * @param handler the receiver of the triples
+     * @throws IOException if the json is malformed
+     */
+    static void parseDelta(InputStream in, DeltaHandler handler) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if ("added".equals(field)) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        handler.added(parser.getValueAsString());
+                    }
+                } else if ("deleted".equals(field)) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        handler.removed(parser.getValueAsString());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+}
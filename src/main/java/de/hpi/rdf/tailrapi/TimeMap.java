@@ -1,13 +1,260 @@
 package de.hpi.rdf.tailrapi;
 
-import java.net.URI;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.UnsupportedEncodingException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 /**
- * Created by magnus on 01.06.16.
+ * The mementos stored under one key, newest first as in the timemap of tailr.
+ * <p>
+ * The datetimes are held sorted in one array of seconds and all mementos share the encoded key,
+ * so a key with many versions costs a few bytes per version and a point in time is found
+ * by binary search. A {@link Memento} is only created when it is accessed.
+ * <p>
+ * A time map can not be modified by its users. {@link TailrClient#getMementos(Repository, String)}
+ * hands out snapshots, which never change. Only the live time map of
+ * {@link TailrClient#getTimeMap(Repository, String)} follows the puts and deletes done through
+ * that client, without fetching the timemap again. Every update replaces the array,
+ * so each query and iterator reads one consistent state.
  */
-public class TimeMap {
+public class TimeMap extends AbstractList<Memento> implements RandomAccess {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final TailrClient client;
+
+    private final Repository repository;
+
+    private final String key;
+
+    private final String queryPrefix;
+
+    /* as encoded by DatetimeCodec, oldest first and distinct */
+    private volatile long[] seconds;
+
+    /**
+     * Instantiates a new time map. The array is not copied if it is sorted.
+     *
+     * @param client     the client which read the timemap
+     * @param repository the repository
+     * @param key        the key
+     * @param seconds    the datetimes in any order, usually newest first
+     * @throws UnsupportedEncodingException if the key can not be encoded
+     */
+    TimeMap(TailrClient client, Repository repository, String key, long[] seconds) throws UnsupportedEncodingException {
+        this(client, repository, key, Memento.queryPrefix(repository, key), sorted(seconds));
+    }
+
+    private TimeMap(TailrClient client, Repository repository, String key, String queryPrefix, long[] seconds) {
+        this.client = client;
+        this.repository = repository;
+        this.key = key;
+        this.queryPrefix = queryPrefix;
+        this.seconds = seconds;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the memento valid at a point in time.
+     *
+     * @param t the point in time
+     * @return the latest memento at or before t or null if there is none
+     */
+    public Memento floor(DateTime t) {
+        long[] s = seconds;
+        int i = Arrays.binarySearch(s, floorSeconds(t));
+        return memento(s, i >= 0 ? i : -i - 2);
+    }
+
+    /**
+     * Gets the first memento from a point in time on.
+     *
+     * @param t the point in time
+     * @return the earliest memento at or after t or null if there is none
+     */
+    public Memento ceiling(DateTime t) {
+        long[] s = seconds;
+        int i = Arrays.binarySearch(s, ceilingSeconds(t));
+        return memento(s, i >= 0 ? i : -i - 1);
+    }
+
+    /**
+     * Gets the mementos between two points in time, both included.
+     * The returned time map is a copy and does not follow later updates.
+     *
+     * @param from the first point in time or null for the first memento
+     * @param to   the last point in time or null for the latest memento
+     * @return the mementos in the range, newest first
+     */
+    public TimeMap range(DateTime from, DateTime to) {
+        long[] s = seconds;
+        int start = from == null ? 0 : Arrays.binarySearch(s, ceilingSeconds(from));
+        if (start < 0) {
+            start = -start - 1;
+        }
+        int end = to == null ? s.length - 1 : Arrays.binarySearch(s, floorSeconds(to));
+        if (end < 0) {
+            end = -end - 2;
+        }
+        long[] range = end < start ? EMPTY : Arrays.copyOfRange(s, start, end + 1);
+        return new TimeMap(client, repository, key, queryPrefix, range);
+    }
+
+    /**
+     * Copies the current mementos into a time map which does not follow later updates.
+     *
+     * @return the snapshot
+     */
+    public TimeMap snapshot() {
+        return new TimeMap(client, repository, key, queryPrefix, seconds.clone());
+    }
+
+    /**
+     * Gets the latest memento.
+     *
+     * @return the latest memento or null if there is none
+     */
+    public Memento latest() {
+        long[] s = seconds;
+        return memento(s, s.length - 1);
+    }
+
+    /**
+     * Gets the number of mementos.
+     *
+     * @return the number of mementos
+     */
+    public int count() {
+        return seconds.length;
+    }
+
+    @Override
+    public Memento get(int index) {
+        long[] s = seconds;
+        if (index < 0 || index >= s.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s.length);
+        }
+        return memento(s, s.length - 1 - index);
+    }
+
+    @Override
+    public int size() {
+        return seconds.length;
+    }
+
+    /**
+     * Iterates over the mementos as they were when the iterator was created.
+     *
+     * @return the iterator, newest first
+     */
+    @Override
+    public Iterator<Memento> iterator() {
+        final long[] s = seconds;
+        return new Iterator<Memento>() {
+
+            private int next = s.length - 1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Memento next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                return memento(s, next--);
+            }
+        };
+    }
+
+    /* adds a memento put through the client */
+    synchronized void add(long datetime) {
+        long[] s = seconds;
+        int i = Arrays.binarySearch(s, datetime);
+        if (i >= 0) {
+            return;
+        }
+        i = -i - 1;
+        long[] added = new long[s.length + 1];
+        System.arraycopy(s, 0, added, 0, i);
+        added[i] = datetime;
+        System.arraycopy(s, i, added, i + 1, s.length - i);
+        seconds = added;
+    }
+
+    /* removes a memento deleted through the client */
+    synchronized void remove(long datetime) {
+        long[] s = seconds;
+        int i = Arrays.binarySearch(s, datetime);
+        if (i < 0) {
+            return;
+        }
+        long[] removed = new long[s.length - 1];
+        System.arraycopy(s, 0, removed, 0, i);
+        System.arraycopy(s, i + 1, removed, i, s.length - i - 1);
+        seconds = removed;
+    }
+
+    /* replaces all mementos after the timemap was fetched again */
+    synchronized void reset(long[] datetimes) {
+        seconds = sorted(datetimes);
+    }
+
+    private Memento memento(long[] s, int i) {
+        return i < 0 || i >= s.length ? null : new Memento(client, repository, key, s[i], queryPrefix);
+    }
+
+    /* a point in time encoded like the mementos, whose datetimes are read in the default zone */
+    private static long floorSeconds(DateTime t) {
+        return DatetimeCodec.of(t.withZone(DateTimeZone.getDefault()));
+    }
+
+    private static long ceilingSeconds(DateTime t) {
+        return floorSeconds(t) + (t.getMillisOfSecond() == 0 ? 0 : 1);
+    }
 
-    private URI originalUri;
-    private URI timegateUri;
-    private URI timemapUri;
+    /* oldest first without duplicates, a timemap of tailr is only reversed in place */
+    private static long[] sorted(long[] s) {
+        boolean ascending = true;
+        boolean descending = true;
+        for (int i = 1; i < s.length && (ascending || descending); i++) {
+            ascending &= s[i - 1] < s[i];
+            descending &= s[i - 1] > s[i];
+        }
+        if (ascending) {
+            return s;
+        }
+        if (descending) {
+            for (int i = 0, j = s.length - 1; i < j; i++, j--) {
+                long t = s[i];
+                s[i] = s[j];
+                s[j] = t;
+            }
+            return s;
+        }
+        long[] sorted = s.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+    }
 }
@@ -0,0 +1,65 @@
+package de.hpi.rdf.tailrapi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recently fetched timemaps together with their validators,
+ * so a timemap can be revalidated with a conditional request.
+ * The remembered {@link TimeMap} is the one handed out, the client updates it on puts and deletes.
+ * <p>
+ * The number of remembered timemaps is bounded, the least recently used one is dropped first.
+ */
+class TimemapCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /**
+     * A timemap as it was received.
+     */
+    static class Entry {
+
+        final String etag;
+
+        final String lastModified;
+
+        final TimeMap timeMap;
+
+        Entry(String etag, String lastModified, TimeMap timeMap) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.timeMap = timeMap;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    TimemapCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    TimemapCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized Entry get(String timemapUri) {
+        return entries.get(timemapUri);
+    }
+
+    synchronized void put(String timemapUri, Entry entry) {
+        entries.put(timemapUri, entry);
+    }
+
+    synchronized void invalidate(String timemapUri) {
+        entries.remove(timemapUri);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,66 @@
+package de.hpi.rdf.tailrapi;
+
+/**
+ * A token bucket limiting the rate of requests.
+ * <p>
+ * The bucket is refilled continuously with the configured rate and holds at most
+ * <code>burst</code> tokens. A caller finding no token reserves the next one and waits
+ * until it is due, so waiting callers are served in order. A rate of zero or less disables the limit.
+ */
+class TokenBucket {
+
+    private double rate;
+
+    private double burst;
+
+    private double tokens;
+
+    private long refilled = System.nanoTime();
+
+    TokenBucket(double rate, int burst) {
+        setRate(rate, burst);
+    }
+
+    synchronized void setRate(double rate, int burst) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("The burst has to allow at least one request.");
+        }
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+        this.refilled = System.nanoTime();
+    }
+
+    synchronized double getRate() {
+        return rate;
+    }
+
+    synchronized int getBurst() {
+        return (int) burst;
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+        }
+    }
+
+    /* take a token, possibly one of the future, and return how long to wait for it */
+    private synchronized long reserve() {
+        if (rate <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilled) / 1e9 * rate);
+        refilled = now;
+
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+    }
+}
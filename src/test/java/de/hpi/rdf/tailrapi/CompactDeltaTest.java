@@ -0,0 +1,68 @@
+package de.hpi.rdf.tailrapi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactDeltaTest {
+
+    private static Delta delta() {
+        Delta d = new Delta();
+        d.getAddedTriples().add("<http://example.org/a> <http://example.org/p> \"some literal\"@en .");
+        d.getAddedTriples().add("<http://example.org/a> <http://example.org/p> _:b3298438.");
+        d.getAddedTriples().add("<http://example.org/a>  <http://example.org/q>   <http://example.org/c> .");
+        d.getRemovedTriples().add("_:b1 <http://example.org/p> <http://example.org/a> .");
+        d.getRemovedTriples().add("<http://example.org/malformed>");
+        return d;
+    }
+
+    @Test
+    public void testRoundTripIsLossless() {
+        Delta d = delta();
+        CompactDelta compact = CompactDelta.of(d);
+
+        Assert.assertEquals(d, compact.toDelta());
+        Assert.assertEquals(d.getAddedTriples(), compact.getAddedTriples());
+        Assert.assertEquals(d.getRemovedTriples(), compact.getRemovedTriples());
+    }
+
+    @Test
+    public void testEqualsAndHashCodeMatchDelta() {
+        Delta d = delta();
+        CompactDelta compact = CompactDelta.of(d);
+
+        Assert.assertEquals(d.hashCode(), compact.hashCode());
+        Assert.assertEquals(compact, CompactDelta.of(delta()));
+
+        Delta other = delta();
+        other.getRemovedTriples().remove(1);
+        Assert.assertFalse(compact.equals(CompactDelta.of(other)));
+        Assert.assertEquals(other.hashCode(), CompactDelta.of(other).hashCode());
+    }
+
+    @Test
+    public void testTermsAreShared() {
+        CompactDelta compact = new CompactDelta();
+        for (int i = 0; i < 100; i++) {
+            compact.added("<http://example.org/a> <http://example.org/p> \"" + i + "\" .");
+        }
+        Assert.assertEquals(102, compact.getTermCount());
+        Assert.assertEquals(100, compact.getAddedTriples().size());
+        Assert.assertTrue(compact.getRemovedTriples().isEmpty());
+    }
+
+    @Test
+    public void testTermsAreInternedSeparately() {
+        CompactDelta compact = new CompactDelta();
+        for (int i = 0; i < 1000; i++) {
+            compact.added("<http://example.org/" + i % 100 + "> <http://example.org/p> <http://example.org/" + i % 10 + "> .");
+        }
+        compact.removed("<http://example.org/1>  <http://example.org/p> <http://example.org/2> .");
+
+        /* the objects are among the subjects, the irregular line is kept whole */
+        Assert.assertEquals(102, compact.getTermCount());
+        Assert.assertEquals("<http://example.org/99> <http://example.org/p> <http://example.org/9> .",
+                compact.getAddedTriples().get(999));
+        Assert.assertEquals("<http://example.org/1>  <http://example.org/p> <http://example.org/2> .",
+                compact.getRemovedTriples().get(0));
+    }
+}
@@ -0,0 +1,81 @@
+package de.hpi.rdf.tailrapi;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.Random;
+
+public class DatetimeCodecTest {
+
+    private static final DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private static final DateTimeFormatter fmtQS = DateTimeFormat.forPattern("yyyy-MM-dd-HH:mm:ss");
+
+    private static final DateTimeFormatter fmtFile = DateTimeFormat.forPattern("yyyyMMddHHmmss");
+
+    @Test
+    public void testMatchesJodaFormats() {
+        Random random = new Random(42);
+        DateTimeFormatter utc = fmt.withZoneUTC();
+        for (int i = 0; i < 10000; i++) {
+            long seconds = (long) (random.nextDouble() * 8900L * 365 * 86400) - 1900L * 365 * 86400;
+            String datetime = utc.print(seconds * 1000);
+
+            Assert.assertEquals(seconds, DatetimeCodec.parse(datetime));
+            Assert.assertEquals(datetime, DatetimeCodec.print(seconds, DatetimeCodec.TIMEMAP));
+            Assert.assertEquals(fmtQS.withZoneUTC().print(seconds * 1000), DatetimeCodec.print(seconds, DatetimeCodec.QUERY));
+            Assert.assertEquals(seconds, DatetimeCodec.parse(DatetimeCodec.print(seconds, DatetimeCodec.QUERY)));
+            Assert.assertEquals(fmtFile.withZoneUTC().print(seconds * 1000),
+                    DatetimeCodec.appendDigits(new StringBuilder(), seconds).toString());
+        }
+    }
+
+    @Test
+    public void testDateTimeKeepsItsFields() {
+        DateTime berlin = new DateTime(2016, 2, 29, 23, 59, 59, DateTimeZone.forID("Europe/Berlin"));
+        long seconds = DatetimeCodec.of(berlin);
+
+        Assert.assertEquals("2016-02-29T23:59:59", DatetimeCodec.print(seconds, DatetimeCodec.TIMEMAP));
+        Assert.assertEquals(DateTime.parse("2016-02-29T23:59:59", fmt), DatetimeCodec.toDateTime(seconds));
+    }
+
+    @Test
+    public void testRejectsMalformedDatetimes() {
+        String[] malformed = {"", "2016-06-01", "2016-06-01 10:00:00", "2016-06-01T10:00:00Z", "2016-13-01T10:00:00",
+                "2015-02-29T10:00:00", "2016-06-01T24:00:00", "2016-06-01T10:60:00", "2016-0a-01T10:00:00"};
+        for (String datetime : malformed) {
+            try {
+                DatetimeCodec.parse(datetime);
+                Assert.fail("parsed " + datetime);
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains(datetime));
+            }
+        }
+        char[] buffer = "[\"2016-06-01T10:00:00\"]".toCharArray();
+        Assert.assertEquals(DatetimeCodec.parse("2016-06-01T10:00:00"), DatetimeCodec.parse(buffer, 2, 19));
+    }
+
+    @Test
+    public void testMementoUri() throws Exception {
+        URI base = new URI("http://tailr.s16a.org/");
+        Repository repo = new Repository("user", "repo");
+        String key = "http://example.org/a?b=c&d=ä";
+        Memento memento = new Memento(repo, key, "2016-06-01T10:00:00");
+
+        URI expected = new URI(base + "api/user/repo?key=" + URLEncoder.encode(key, "UTF8") + "&datetime=2016-06-01-10:00:00");
+        Assert.assertEquals(expected, memento.getMementoUri(base));
+        Assert.assertEquals(expected, memento.getMementoUri(base));
+
+        TimeMap timeMap = new TimeMap(null, repo, key, new long[]{memento.getSeconds() + 3600, memento.getSeconds()});
+        Assert.assertEquals(2, timeMap.size());
+        Assert.assertEquals(expected, timeMap.get(1).getMementoUri(base));
+        Assert.assertEquals(DateTime.parse("2016-06-01T11:00:00", fmt), timeMap.get(0).getDateTime());
+        Assert.assertEquals(key, timeMap.get(0).getKey());
+    }
+}
@@ -1,11 +1,25 @@
 package de.hpi.rdf.tailrapi;
 
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.update.UpdateFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -130,4 +144,188 @@ public class DeltaTest {
         }
 
     }
-}
\ No newline at end of file
+
+    /* test squashing of consecutive deltas */
+    public static class ComposeTests {
+
+        private static Delta delta(List<String> added, List<String> removed) {
+            Delta d = new Delta();
+            d.getAddedTriples().addAll(added);
+            d.getRemovedTriples().addAll(removed);
+            return d;
+        }
+
+        @Test
+        public void testChurnCancelsOut() {
+            Delta d1 = delta(Arrays.asList("<a> <p> \"1\" .", "<a> <p> \"2\" ."), Collections.singletonList("<a> <p> \"0\" ."));
+            Delta d2 = delta(Collections.singletonList("<a> <p> \"0\" ."), Arrays.asList("<a> <p> \"1\" .", "<a> <q> <b> ."));
+            Delta d3 = delta(Collections.singletonList("<a> <p> \"3\" ."), Collections.<String>emptyList());
+
+            Delta net = Delta.compose(d1, d2, d3);
+
+            Assert.assertEquals(Arrays.asList("<a> <p> \"2\" .", "<a> <p> \"3\" ."), net.getAddedTriples());
+            Assert.assertEquals(Collections.singletonList("<a> <q> <b> ."), net.getRemovedTriples());
+        }
+
+        @Test
+        public void testComposeMatchesSequentialApplication() {
+            Delta d1 = delta(Collections.singletonList("<http://x/a> <http://x/p> \"1\" ."), Collections.singletonList("<http://x/a> <http://x/p> \"0\" ."));
+            Delta d2 = delta(Collections.singletonList("<http://x/a> <http://x/p> \"2\" ."), Collections.singletonList("<http://x/a> <http://x/p> \"1\" ."));
+
+            Graph sequential = Factory.createDefaultGraph();
+            Graph squashed = Factory.createDefaultGraph();
+            Delta start = delta(Arrays.asList("<http://x/a> <http://x/p> \"0\" .", "<http://x/b> <http://x/p> \"0\" ."), Collections.<String>emptyList());
+            start.applyTo(sequential);
+            start.applyTo(squashed);
+
+            d1.applyTo(sequential);
+            d2.applyTo(sequential);
+            Delta net = Delta.compose(d1, d2);
+            net.applyTo(squashed);
+
+            Assert.assertTrue(sequential.isIsomorphicWith(squashed));
+            Assert.assertEquals(1, net.getAddedTriples().size());
+            Assert.assertEquals(1, net.getRemovedTriples().size());
+            Assert.assertTrue(Delta.compose().getAddedTriples().isEmpty());
+        }
+    }
+
+    /* test the streaming update generation against jena */
+    public static class SparqlWriterTests {
+
+        private static String graph = "http://filmontology.org";
+
+        private static Delta delta() {
+            Delta d = new Delta();
+            d.getAddedTriples().add("<http://example.org/a> <http://example.org/p> \"1\" .");
+            d.getAddedTriples().add("<http://example.org/a> <http://example.org/p> \"2\" .");
+            d.getAddedTriples().add("<http://example.org/a> <http://example.org/p> \"3\" .");
+            d.getAddedTriples().add("_:x <http://example.org/p> \"_:no blank node\" .");
+            d.getRemovedTriples().add("<http://example.org/a> <http://example.org/p> \"0\" .");
+            d.getRemovedTriples().add("<http://example.org/a> <http://example.org/q> _:b1 .");
+            d.getRemovedTriples().add("_:b1 <http://example.org/p> \"blank\" .");
+            return d;
+        }
+
+        @Test
+        public void testWrittenUpdateApplies() throws Exception {
+            Dataset dataset = DatasetFactory.createTxnMem();
+            UpdateAction.parseExecute("INSERT DATA { GRAPH <" + graph + "> { "
+                    + "<http://example.org/a> <http://example.org/p> \"0\" . "
+                    + "<http://example.org/a> <http://example.org/q> _:b . "
+                    + "_:b <http://example.org/p> \"blank\" . } }", dataset);
+
+            StringBuilder update = new StringBuilder();
+            delta().writeSparql(update, graph, 2);
+            UpdateAction.parseExecute(update.toString(), dataset);
+
+            Graph g = dataset.asDatasetGraph().getGraph(NodeFactory.createURI(graph));
+            Assert.assertEquals(4, g.size());
+            /* two chunks of ground triples and one for the blank node */
+            Assert.assertEquals(4, update.toString().split("INSERT DATA").length);
+        }
+
+        @Test
+        public void testUpdatesAreChunked() {
+            final List<String> updates = new ArrayList<>();
+            delta().forEachSparqlUpdate(graph, 1, updates::add);
+
+            /* one delete data, one pattern delete, one blank node insert, three insert data */
+            Assert.assertEquals(6, updates.size());
+            for (String update : updates) {
+                UpdateFactory.create(update);
+            }
+            Assert.assertTrue(updates.get(0).startsWith("DELETE DATA"));
+            Assert.assertTrue(updates.get(1).contains("?b1"));
+            Assert.assertTrue(updates.get(2).contains("\"_:no blank node\""));
+        }
+
+        @Test
+        public void testBlankNodesWithIrregularWhitespace() throws Exception {
+            Dataset dataset = DatasetFactory.createTxnMem();
+            UpdateAction.parseExecute("INSERT DATA { GRAPH <" + graph + "> { "
+                    + "<http://example.org/a> <http://example.org/q> _:b . "
+                    + "_:b <http://example.org/p> \"blank\" . } }", dataset);
+
+            Delta d = new Delta();
+            d.getRemovedTriples().add("<http://example.org/a>  <http://example.org/q> _:b .");
+            d.getRemovedTriples().add("_:b\t<http://example.org/p>   \"blank\" .");
+            d.getAddedTriples().add(" <http://example.org/a> <http://example.org/q>  _:c.");
+            StringBuilder update = new StringBuilder();
+            d.writeSparql(update, graph);
+            Assert.assertFalse(update.toString().contains("DELETE DATA"));
+            UpdateAction.parseExecute(update.toString(), dataset);
+
+            Graph g = dataset.asDatasetGraph().getGraph(NodeFactory.createURI(graph));
+            Assert.assertEquals(1, g.size());
+            Assert.assertTrue(g.find(NodeFactory.createURI("http://example.org/a"), null, null).next().getObject().isBlank());
+        }
+
+        @Test
+        public void testEmptyDeltaWritesNothing() throws Exception {
+            StringBuilder update = new StringBuilder();
+            new Delta().writeSparql(update, graph);
+            Assert.assertEquals(0, update.length());
+        }
+    }
+
+    /* test applying deltas to local graphs */
+    public static class ApplyTests {
+
+        private static final String DATA = "<http://example.org/a> <http://example.org/p> \"0\" .\n"
+                + "<http://example.org/a> <http://example.org/q> _:b .\n"
+                + "_:b <http://example.org/p> \"blank\" .\n"
+                + "<http://example.org/c> <http://example.org/q> _:c .\n"
+                + "_:c <http://example.org/p> \"other\" .\n";
+
+        private static Delta delta() {
+            Delta d = new Delta();
+            d.getAddedTriples().add("<http://example.org/a> <http://example.org/p> \"1\" .");
+            d.getAddedTriples().add("<http://example.org/a> <http://example.org/r> _:x .");
+            d.getAddedTriples().add("_:x <http://example.org/p> \"new\" .");
+            d.getRemovedTriples().add("<http://example.org/a> <http://example.org/p> \"0\" .");
+            d.getRemovedTriples().add("<http://example.org/a> <http://example.org/q> _:b1 .");
+            d.getRemovedTriples().add("_:b1 <http://example.org/p> \"blank\" .");
+            return d;
+        }
+
+        private static void read(Graph g) {
+            RDFDataMgr.read(g, new StringReader(DATA), null, Lang.NTRIPLES);
+        }
+
+        @Test
+        public void testApplyToGraph() {
+            Graph g = Factory.createDefaultGraph();
+            read(g);
+            delta().applyTo(g);
+
+            Node a = NodeFactory.createURI("http://example.org/a");
+            Node p = NodeFactory.createURI("http://example.org/p");
+            Node r = NodeFactory.createURI("http://example.org/r");
+            Assert.assertEquals(5, g.size());
+            Assert.assertTrue(g.contains(a, p, NodeFactory.createLiteral("1")));
+            Assert.assertFalse(g.contains(a, p, NodeFactory.createLiteral("0")));
+            Assert.assertFalse(g.contains(Node.ANY, p, NodeFactory.createLiteral("blank")));
+            Assert.assertTrue(g.contains(Node.ANY, p, NodeFactory.createLiteral("other")));
+            Node x = g.find(a, r, Node.ANY).next().getObject();
+            Assert.assertTrue(g.contains(x, p, NodeFactory.createLiteral("new")));
+        }
+
+        @Test
+        public void testApplyToDatasetInTransaction() {
+            Node name = NodeFactory.createURI("http://filmontology.org");
+            DatasetGraph dataset = DatasetFactory.createTxnMem().asDatasetGraph();
+            dataset.begin(ReadWrite.WRITE);
+            read(dataset.getGraph(name));
+            dataset.commit();
+            dataset.end();
+
+            delta().applyTo(dataset, name);
+
+            dataset.begin(ReadWrite.READ);
+            Assert.assertEquals(5, dataset.getGraph(name).size());
+            Assert.assertTrue(dataset.getDefaultGraph().isEmpty());
+            dataset.end();
+        }
+    }
+}
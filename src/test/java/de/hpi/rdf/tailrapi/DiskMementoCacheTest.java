@@ -0,0 +1,76 @@
+package de.hpi.rdf.tailrapi;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public class DiskMementoCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Repository repo = new Repository("santifa", "dwerft");
+
+    private Memento first = new Memento(repo, "http://example.org", "2016-06-01T10:00:00");
+
+    private Memento second = new Memento(repo, "http://example.org", "2016-06-02T10:00:00");
+
+    private static Delta delta(String added, String removed) {
+        Delta d = new Delta();
+        d.getAddedTriples().add(added);
+        d.getRemovedTriples().add(removed);
+        return d;
+    }
+
+    @Test
+    public void testContentAndDeltaSurviveRestart() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        DiskMementoCache cache = new DiskMementoCache(dir);
+        byte[] content = "<a> <b> <c> .\n".getBytes(StandardCharsets.UTF_8);
+        Delta d = delta("<a> <b> <c> .", "<a> <b> \"d\" .");
+
+        Assert.assertNull(cache.getContent(first));
+        cache.putContent(first, content);
+        cache.putDelta(first, d);
+
+        DiskMementoCache reopened = new DiskMementoCache(dir);
+        Assert.assertArrayEquals(content, reopened.getContent(first));
+        Assert.assertEquals(d, reopened.getDelta(first));
+        Assert.assertNull(reopened.getDelta(second));
+        Assert.assertEquals(cache.getDiskBytes(), reopened.getDiskBytes());
+    }
+
+    @Test
+    public void testInvalidateRemovesDeltasOfKey() throws IOException {
+        DiskMementoCache cache = new DiskMementoCache(folder.getRoot().toPath());
+        byte[] content = "<a> <b> <c> .\n".getBytes(StandardCharsets.UTF_8);
+        cache.putContent(first, content);
+        cache.putContent(second, content);
+        cache.putDelta(first, delta("<a> <b> <c> .", "<a> <b> <d> ."));
+        cache.putDelta(second, delta("<a> <b> <e> .", "<a> <b> <c> ."));
+
+        cache.invalidate(first);
+
+        Assert.assertNull(cache.getContent(first));
+        Assert.assertNull(cache.getDelta(first));
+        Assert.assertNull(cache.getDelta(second));
+        Assert.assertArrayEquals(content, cache.getContent(second));
+    }
+
+    @Test
+    public void testDiskSizeIsBounded() throws IOException {
+        DiskMementoCache cache = new DiskMementoCache(folder.getRoot().toPath(), 1000, 0);
+        byte[] content = new byte[300];
+
+        for (int day = 1; day <= 9; day++) {
+            cache.putContent(new Memento(repo, "http://example.org", "2016-06-0" + day + "T10:00:00"), content);
+            Assert.assertTrue(cache.getDiskBytes() <= 1000);
+        }
+        Assert.assertNotNull(cache.getContent(new Memento(repo, "http://example.org", "2016-06-09T10:00:00")));
+    }
+}
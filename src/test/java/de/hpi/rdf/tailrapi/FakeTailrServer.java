@@ -0,0 +1,594 @@
+package de.hpi.rdf.tailrapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.utils.DateUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in for tailr, serving the endpoints used by {@link TailrClient}:
+ * repositories of a user, key index pages, timemaps, the timegate, memento contents and deltas,
+ * puts and deletes. All versions are kept in memory as sorted triple arrays.
+ * <p>
+ * Latency and errors can be injected to test retries, pooling and concurrency limits.
+ * Like tailr, a put without changes creates no version and versions of a key are at least a second apart.
+ */
+public class FakeTailrServer implements Closeable {
+
+    private static final DateTimeFormatter fmt = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss").withZoneUTC();
+
+    private static final DateTimeFormatter fmtQS = DateTimeFormat.forPattern("yyyy-MM-dd-HH:mm:ss").withZoneUTC();
+
+    private static final String[] NO_TRIPLES = new String[0];
+
+    /* one stored version, the triples are sorted and distinct */
+    private static class Version {
+
+        final DateTime dateTime;
+
+        final String[] triples;
+
+        Version(DateTime dateTime, String[] triples) {
+            this.dateTime = dateTime;
+            this.triples = triples;
+        }
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService threads;
+
+    /* user -> repository -> key -> versions by datetime */
+    private final Map<String, Map<String, NavigableMap<String, NavigableMap<DateTime, Version>>>> users = new ConcurrentHashMap<>();
+
+    private volatile String token;
+
+    private volatile int pageSize = 100;
+
+    private volatile long minLatencyMillis;
+
+    private volatile long maxLatencyMillis;
+
+    private volatile double errorRate;
+
+    private volatile int errorStatus = 503;
+
+    private final AtomicInteger failNext = new AtomicInteger();
+
+    private volatile int failNextStatus = 503;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * Creates a server on a free local port, serving with 16 threads.
+     *
+     * @throws IOException if no port can be bound
+     */
+    public FakeTailrServer() throws IOException {
+        this(16);
+    }
+
+    /**
+     * Creates a server on a free local port.
+     *
+     * @param threads the number of requests served at once
+     * @throws IOException if no port can be bound
+     */
+    public FakeTailrServer(int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 256);
+        this.threads = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("fake-tailr"));
+        server.setExecutor(this.threads);
+        server.createContext("/api/", this::handle);
+    }
+
+    public FakeTailrServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * Gets the base URI to create a client with, e.g. <code>http://localhost:4711/</code>.
+     *
+     * @return the base URI
+     */
+    public String getUri() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Requires the token for puts and deletes, as tailr does.
+     *
+     * @param token the token or null to accept all writes
+     * @return this server
+     */
+    public FakeTailrServer token(String token) {
+        this.token = token;
+        return this;
+    }
+
+    /**
+     * Sets the number of keys per index page.
+     *
+     * @param pageSize the keys per page
+     * @return this server
+     */
+    public FakeTailrServer pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Delays every response by a random time between the bounds.
+     *
+     * @param minMillis the minimal delay
+     * @param maxMillis the maximal delay
+     * @return this server
+     */
+    public FakeTailrServer latency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid latency " + minMillis + ".." + maxMillis);
+        }
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Answers a share of all requests with an error instead of serving them.
+     *
+     * @param rate   the probability of an error between 0 and 1
+     * @param status the status code of the errors
+     * @return this server
+     */
+    public FakeTailrServer errorRate(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Answers the next requests with an error instead of serving them.
+     *
+     * @param count  the number of failing requests
+     * @param status the status code of the errors
+     * @return this server
+     */
+    public FakeTailrServer failNext(int count, int status) {
+        this.failNextStatus = status;
+        this.failNext.set(count);
+        return this;
+    }
+
+    /**
+     * Stores a version directly, e.g. to set up a repository of realistic size.
+     * Versions may be added in any order, content equal to the version before is stored anyway.
+     *
+     * @param repo     the repository
+     * @param key      the key
+     * @param dateTime the datetime of the version
+     * @param content  the content in N-Triples
+     */
+    public void putVersion(Repository repo, String key, DateTime dateTime, String content) {
+        DateTime second = dateTime.withMillisOfSecond(0).withZone(DateTimeZone.UTC);
+        NavigableMap<DateTime, Version> versions = versions(repo.getUser(), repo.getName(), key, true);
+        synchronized (versions) {
+            versions.put(second, new Version(second, triples(content)));
+        }
+    }
+
+    /**
+     * Gets the number of versions stored under a key.
+     *
+     * @param repo the repository
+     * @param key  the key
+     * @return the number of versions
+     */
+    public int getVersionCount(Repository repo, String key) {
+        NavigableMap<DateTime, Version> versions = versions(repo.getUser(), repo.getName(), key, false);
+        if (versions == null) {
+            return 0;
+        }
+        synchronized (versions) {
+            return versions.size();
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+
+    private NavigableMap<DateTime, Version> versions(String user, String repo, String key, boolean create) {
+        Map<String, NavigableMap<String, NavigableMap<DateTime, Version>>> repos = users.get(user);
+        if (repos == null) {
+            if (!create) {
+                return null;
+            }
+            repos = users.computeIfAbsent(user, u -> new ConcurrentHashMap<>());
+        }
+        NavigableMap<String, NavigableMap<DateTime, Version>> keys = repos.get(repo);
+        if (keys == null) {
+            if (!create) {
+                return null;
+            }
+            keys = repos.computeIfAbsent(repo, r -> new ConcurrentSkipListMap<>());
+        }
+        NavigableMap<DateTime, Version> versions = keys.get(key);
+        if (versions == null && create) {
+            versions = keys.computeIfAbsent(key, k -> new TreeMap<>());
+        }
+        return versions;
+    }
+
+    /* sorted distinct lines, skipping blanks and comments */
+    private static String[] triples(String content) {
+        TreeSet<String> triples = new TreeSet<>();
+        for (String line : content.split("\n")) {
+            String triple = line.trim();
+            if (!triple.isEmpty() && !triple.startsWith("#")) {
+                triples.add(triple);
+            }
+        }
+        return triples.toArray(NO_TRIPLES);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int running = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(running, Math::max);
+        /* no keep-alive, a pooled connection closed by the server would reset a non-retried put */
+        exchange.getResponseHeaders().set("Connection", "close");
+        try {
+            delay();
+            int error = injectedError();
+            if (error != 0) {
+                errors.incrementAndGet();
+                send(exchange, error, null, null);
+            } else {
+                serve(exchange);
+            }
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", e.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void delay() {
+        long max = maxLatencyMillis;
+        if (max > 0) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(minLatencyMillis, max + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int injectedError() {
+        if (failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            return failNextStatus;
+        }
+        double rate = errorRate;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            return errorStatus;
+        }
+        return 0;
+    }
+
+    /* /api/{user} or /api/{user}/{repo}?... */
+    private void serve(HttpExchange exchange) throws IOException {
+        String[] path = exchange.getRequestURI().getRawPath().substring("/api/".length()).split("/");
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        String method = exchange.getRequestMethod();
+
+        if (path.length == 1 && "GET".equals(method)) {
+            listRepositories(exchange, path[0]);
+        } else if (path.length != 2) {
+            send(exchange, 404, null, null);
+        } else if (query.containsKey("index")) {
+            listKeys(exchange, path[0], path[1], Integer.parseInt(query.getOrDefault("page", "1")));
+        } else if (!query.containsKey("key")) {
+            send(exchange, 400, null, null);
+        } else if ("PUT".equals(method)) {
+            put(exchange, path[0], path[1], query.get("key"));
+        } else if ("DELETE".equals(method)) {
+            delete(exchange, path[0], path[1], query.get("key"), query.get("datetime"));
+        } else if (query.containsKey("timemap")) {
+            timemap(exchange, path[0], path[1], query.get("key"));
+        } else {
+            memento(exchange, path[0], path[1], query.get("key"), query.get("datetime"), query.containsKey("delta"));
+        }
+    }
+
+    private static Map<String, String> query(String raw) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (raw != null) {
+            for (String param : raw.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq < 0) {
+                    query.put(URLDecoder.decode(param, "UTF-8"), "");
+                } else {
+                    query.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    private void listRepositories(HttpExchange exchange, String user) throws IOException {
+        Map<String, NavigableMap<String, NavigableMap<DateTime, Version>>> repos = users.get(user);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = TailrJson.FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeObjectFieldStart("repositories");
+            json.writeArrayFieldStart("list");
+            if (repos != null) {
+                for (String name : new TreeSet<>(repos.keySet())) {
+                    json.writeStartObject();
+                    json.writeStringField("name", name);
+                    json.writeEndObject();
+                }
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        send(exchange, 200, "application/json", out.toByteArray());
+    }
+
+    private void listKeys(HttpExchange exchange, String user, String repo, int page) throws IOException {
+        Map<String, NavigableMap<String, NavigableMap<DateTime, Version>>> repos = users.get(user);
+        NavigableMap<String, NavigableMap<DateTime, Version>> keys = repos == null ? null : repos.get(repo);
+        if (keys == null) {
+            send(exchange, 404, null, null);
+            return;
+        }
+        StringBuilder body = new StringBuilder();
+        int skip = (page - 1) * pageSize;
+        int taken = 0;
+        for (String key : keys.keySet()) {
+            if (skip > 0) {
+                skip--;
+            } else if (taken++ < pageSize) {
+                body.append(key).append('\n');
+            } else {
+                break;
+            }
+        }
+        send(exchange, 200, "text/plain", body.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void timemap(HttpExchange exchange, String user, String repo, String key) throws IOException {
+        NavigableMap<DateTime, Version> versions = versions(user, repo, key, false);
+        List<DateTime> datetimes = versions == null ? new ArrayList<>() : datetimes(versions);
+        if (datetimes.isEmpty()) {
+            send(exchange, 404, null, null);
+            return;
+        }
+
+        String etag = "\"" + datetimes.size() + "-" + datetimes.get(0).getMillis() + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            send(exchange, 304, null, null);
+            return;
+        }
+
+        String keyUri = getUri() + "api/" + user + "/" + repo + "?key=" + URLEncoder.encode(key, "UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = TailrJson.FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("original_uri", key);
+            json.writeStringField("timegate_uri", keyUri);
+            json.writeObjectFieldStart("mementos");
+            json.writeArrayFieldStart("list");
+            for (DateTime datetime : datetimes) {
+                json.writeStartObject();
+                json.writeStringField("datetime", fmt.print(datetime));
+                json.writeStringField("uri", keyUri + "&datetime=" + fmtQS.print(datetime));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        send(exchange, 200, "application/json", out.toByteArray());
+    }
+
+    /* newest first, as tailr lists them */
+    private static List<DateTime> datetimes(NavigableMap<DateTime, Version> versions) {
+        synchronized (versions) {
+            return new ArrayList<>(versions.descendingKeySet());
+        }
+    }
+
+    /* the timegate without datetime, otherwise content or delta of the version valid at the datetime */
+    private void memento(HttpExchange exchange, String user, String repo, String key, String datetime,
+                         boolean delta) throws IOException {
+        NavigableMap<DateTime, Version> versions = versions(user, repo, key, false);
+        Version version = null;
+        Version previous = null;
+        if (versions != null) {
+            synchronized (versions) {
+                Map.Entry<DateTime, Version> entry = datetime == null ? versions.lastEntry()
+                        : versions.floorEntry(fmtQS.parseDateTime(datetime));
+                if (entry != null) {
+                    version = entry.getValue();
+                    Map.Entry<DateTime, Version> before = versions.lowerEntry(entry.getKey());
+                    previous = before == null ? null : before.getValue();
+                }
+            }
+        }
+        if (version == null) {
+            send(exchange, 404, null, null);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Memento-Datetime", DateUtils.formatDate(version.dateTime.toDate()));
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+        } else if (delta) {
+            send(exchange, 200, "application/json", delta(previous == null ? NO_TRIPLES : previous.triples, version.triples));
+        } else {
+            StringBuilder body = new StringBuilder();
+            for (String triple : version.triples) {
+                body.append(triple).append('\n');
+            }
+            send(exchange, 200, "application/n-triples", body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /* merge the sorted triples of both versions */
+    private static byte[] delta(String[] before, String[] after) throws IOException {
+        List<String> added = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            int c = i == before.length ? 1 : j == after.length ? -1 : before[i].compareTo(after[j]);
+            if (c < 0) {
+                deleted.add(before[i++]);
+            } else if (c > 0) {
+                added.add(after[j++]);
+            } else {
+                i++;
+                j++;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = TailrJson.FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("added");
+            for (String triple : added) {
+                json.writeString(triple);
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("deleted");
+            for (String triple : deleted) {
+                json.writeString(triple);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String t = token;
+        return t == null || ("token " + t).equals(exchange.getRequestHeaders().getFirst("Authorization"));
+    }
+
+    private void put(HttpExchange exchange, String user, String repo, String key) throws IOException {
+        if (!authorized(exchange)) {
+            exchange.getRequestBody().close();
+            send(exchange, 401, null, null);
+            return;
+        }
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+        }
+        String[] triples = triples(content.toString());
+
+        NavigableMap<DateTime, Version> versions = versions(user, repo, key, true);
+        synchronized (versions) {
+            Map.Entry<DateTime, Version> last = versions.lastEntry();
+            if (last == null || !Arrays.equals(last.getValue().triples, triples)) {
+                DateTime now = DateTime.now(DateTimeZone.UTC).withMillisOfSecond(0);
+                if (last != null && !now.isAfter(last.getKey())) {
+                    now = last.getKey().plusSeconds(1);
+                }
+                versions.put(now, new Version(now, triples));
+            }
+        }
+        send(exchange, 200, null, null);
+    }
+
+    private void delete(HttpExchange exchange, String user, String repo, String key, String datetime) throws IOException {
+        if (!authorized(exchange)) {
+            send(exchange, 401, null, null);
+            return;
+        }
+        NavigableMap<DateTime, Version> versions = versions(user, repo, key, false);
+        boolean removed = false;
+        if (versions != null && datetime != null) {
+            synchronized (versions) {
+                removed = versions.remove(fmtQS.parseDateTime(datetime)) != null;
+            }
+        }
+        send(exchange, removed ? 200 : 404, null, null);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package de.hpi.rdf.tailrapi;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FakeTailrServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Repository repo = new Repository("fake", "repo");
+
+    private final DateTime start = new DateTime(2016, 6, 1, 10, 0, DateTimeZone.UTC);
+
+    private FakeTailrServer server;
+
+    private ConnectionPool pool;
+
+    private TailrClient client;
+
+    private static String content(String key, int version, int triples) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < triples; i++) {
+            builder.append('<').append(key).append("> <http://example.org/p").append(i).append("> \"")
+                    .append(i < triples / 2 ? 0 : version).append("\" .\n");
+        }
+        return builder.toString();
+    }
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        server = new FakeTailrServer().token("secret").start();
+        pool = new ConnectionPool();
+        client = TailrClient.builder(server.getUri()).user("fake").token("secret").connectionPool(pool).build();
+        client.getRequestExecutor().retries(3, 1, 5);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        pool.close();
+        server.close();
+    }
+
+    @Test
+    public void testPutResolveAndDelete() throws IOException, URISyntaxException {
+        String key = "http://example.org/a";
+        client.putMemento(repo, key, "<http://example.org/a> <http://example.org/p> \"1\" .\n");
+        Delta d = client.putMemento(repo, key, "<http://example.org/a> <http://example.org/p> \"2\" .\n");
+
+        Assert.assertEquals(Arrays.asList("<http://example.org/a> <http://example.org/p> \"2\" ."), d.getAddedTriples());
+        Assert.assertEquals(Arrays.asList("<http://example.org/a> <http://example.org/p> \"1\" ."), d.getRemovedTriples());
+
+        List<Memento> mementos = client.getMementos(repo, key);
+        Assert.assertEquals(2, mementos.size());
+        Assert.assertEquals(mementos.get(0).getDateTime(), client.getLatestMemento(repo, key).getDateTime());
+        Graph first = client.resolve(mementos.get(1));
+        Assert.assertEquals(1, first.size());
+
+        client.putMemento(repo, key, "<http://example.org/a> <http://example.org/p> \"2\" .\n");
+        Assert.assertEquals(2, server.getVersionCount(repo, key));
+
+        Assert.assertEquals(200, client.deleteMemento(mementos.get(0)).getStatusCode());
+        Assert.assertEquals(1, client.getMementos(repo, key).size());
+    }
+
+    @Test
+    public void testTimeMapFollowsPutsAndDeletes() throws IOException, URISyntaxException {
+        String key = "http://example.org/a";
+        server.putVersion(repo, key, start, content(key, 0, 2));
+        server.putVersion(repo, key, start.plusHours(2), content(key, 2, 2));
+        TimeMap timeMap = client.getTimeMap(repo, key);
+        TimeMap snapshot = client.getMementos(repo, key);
+        Assert.assertEquals(start.toDateTime(DateTimeZone.getDefault()), timeMap.floor(start.plusHours(1)).getDateTime());
+
+        long requests = server.getRequests();
+        client.putMemento(repo, key, content(key, 3, 2), PutOptions.defaults().returnDelta(false));
+        Assert.assertEquals(2, server.getRequests() - requests);
+        Assert.assertEquals(3, timeMap.count());
+        Assert.assertEquals(client.getLatestMemento(repo, key).getDateTime(), timeMap.latest().getDateTime());
+
+        client.deleteMemento(timeMap.floor(start.plusHours(2)));
+        Assert.assertEquals(2, timeMap.count());
+        Assert.assertEquals(timeMap.latest().getDateTime(), timeMap.ceiling(start.plusSeconds(1)).getDateTime());
+        Assert.assertEquals(2, server.getVersionCount(repo, key));
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals(start.plusHours(2).toDateTime(DateTimeZone.getDefault()), snapshot.get(0).getDateTime());
+    }
+
+    @Test
+    public void testPutIfChangedSkipsUnchangedContent() throws IOException, URISyntaxException {
+        String key = "http://example.org/a";
+        PutOptions options = PutOptions.defaults().putIfChanged(true);
+        Delta first = client.putMemento(repo, key, content(key, 0, 4), options);
+        Assert.assertEquals(4, first.getAddedTriples().size());
+
+        long requests = server.getRequests();
+        Delta unchanged = client.putMemento(repo, key, "# reformatted\n" + content(key, 0, 4).replace(" .", "."), options);
+        Assert.assertTrue(unchanged.isEmpty());
+        Assert.assertEquals(1, server.getVersionCount(repo, key));
+        Assert.assertEquals(2, server.getRequests() - requests);
+
+        Delta local = client.computeDelta(repo, key, content(key, 1, 4));
+        Delta changed = client.putMemento(repo, key, content(key, 1, 4), options);
+        Assert.assertEquals(local, changed);
+        Assert.assertEquals(2, server.getVersionCount(repo, key));
+        Assert.assertEquals(changed, client.getLatestDelta(repo, key));
+    }
+
+    @Test
+    public void testBulkTimemapsShareRequests() throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int k = 0; k < 10; k++) {
+            String key = "http://example.org/" + k;
+            keys.add(key);
+            keys.add(key);
+            for (int v = 0; v <= k; v++) {
+                server.putVersion(repo, key, start.plusHours(v), content(key, v, 2));
+            }
+        }
+        server.latency(200, 200);
+        JmxMetricsRecorder metrics = new JmxMetricsRecorder("bulk");
+        client.getRequestExecutor().metrics(metrics);
+
+        Map<String, List<Memento>> first = new ConcurrentHashMap<>();
+        Thread other = new Thread(() -> {
+            try {
+                first.putAll(client.getMementos(repo, keys));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        other.start();
+        Map<String, List<Memento>> mementos = client.getMementos(repo, keys, 10);
+        other.join();
+
+        Assert.assertEquals(10, mementos.size());
+        Assert.assertEquals(keys.get(0), mementos.keySet().iterator().next());
+        Assert.assertEquals(10, mementos.get("http://example.org/9").size());
+        Assert.assertEquals(mementos.keySet(), first.keySet());
+        Assert.assertTrue(server.getRequests() < 20);
+        Assert.assertEquals(20 - server.getRequests(), metrics.getAttribute("Timemap.Coalesced"));
+    }
+
+    @Test
+    public void testClientsOfTenantsAreIndependent() throws IOException, URISyntaxException {
+        TailrClient other = TailrClient.builder(server.getUri().replaceAll("/$", "")).user("other").token("wrong")
+                .connections(4, 4).build();
+        try {
+            Assert.assertEquals(client.getTailrUri(), other.getTailrUri());
+            client.putMemento(repo, "http://example.org/a", "<a> <b> <c> .\n");
+            try {
+                other.putMemento(repo, "http://example.org/a", "<a> <b> <d> .\n");
+                Assert.fail("put with the token of another tenant succeeded");
+            } catch (IOException e) {
+                Assert.assertEquals(1, server.getVersionCount(repo, "http://example.org/a"));
+            }
+
+            Memento m = other.getLatestMemento(repo, "http://example.org/a");
+            Assert.assertTrue(m.getMementoUri().toString().startsWith(server.getUri()));
+            Assert.assertEquals(1, other.resolve(m).size());
+            Assert.assertFalse(other.getConnectionPool() == client.getConnectionPool());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testHandMadeMementoWithTheTailrUri() throws IOException, URISyntaxException {
+        server.putVersion(repo, "http://example.org/a", start, content("http://example.org/a", 0, 2));
+        Memento m = new Memento(repo, "http://example.org/a", start);
+        /* without a client the default tailr instance is used */
+        Assert.assertTrue(m.getMementoUri().toString().startsWith(TailrClient.getInstance().getTailrUri().toString()));
+        Assert.assertEquals(client.getLatestMemento(repo, "http://example.org/a").getMementoUri(),
+                m.getMementoUri(client.getTailrUri()));
+        Graph g = GraphFactory.createDefaultGraph();
+        m.resolve(client.getTailrUri(), client.getRequestExecutor(), StreamRDFLib.graph(g));
+        Assert.assertEquals(2, g.size());
+        Assert.assertEquals(2, client.resolve(m).size());
+    }
+
+    @Test
+    public void testGetInstanceKeepsOneClientPerConfiguration() throws URISyntaxException {
+        @SuppressWarnings("deprecation")
+        TailrClient first = TailrClient.getInstance(server.getUri(), "fake", "a", false, pool);
+        @SuppressWarnings("deprecation")
+        TailrClient second = TailrClient.getInstance(server.getUri(), "fake", "b", false, pool);
+        Assert.assertEquals("a", first.getToken());
+        Assert.assertEquals("b", second.getToken());
+
+        first.close();
+        @SuppressWarnings("deprecation")
+        TailrClient again = TailrClient.getInstance(server.getUri(), "fake", "b", false, pool);
+        Assert.assertTrue(again == second);
+        second.close();
+    }
+
+    @Test
+    public void testRepositoriesAndIndexPages() throws IOException {
+        server.pageSize(2);
+        for (int i = 0; i < 5; i++) {
+            server.putVersion(repo, "http://example.org/" + i, start, content("http://example.org/" + i, 0, 2));
+        }
+        server.putVersion(new Repository("fake", "other"), "http://example.org/0", start, "");
+
+        List<Repository> repos = client.getUserRepositories();
+        Assert.assertEquals(2, repos.size());
+        Assert.assertEquals("other", repos.get(0).getName());
+
+        List<String> keys = client.getRepositoryKeys(repo);
+        Assert.assertEquals(5, keys.size());
+        Assert.assertEquals("http://example.org/4", keys.get(4));
+    }
+
+    @Test
+    public void testFailedIndexPageThrows() throws IOException {
+        server.putVersion(repo, "http://example.org/a", start, content("http://example.org/a", 0, 2));
+        server.failNext(4, 503);
+        try {
+            client.getRepositoryKeyPage(repo, 1);
+            Assert.fail("failed index page was read as keys");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("503"));
+        }
+        Assert.assertEquals(Arrays.asList("http://example.org/a"), client.getRepositoryKeyPage(repo, 1));
+    }
+
+    @Test
+    public void testInjectedErrorsAreRetried() throws IOException {
+        server.putVersion(repo, "http://example.org/a", start, content("http://example.org/a", 0, 2));
+        server.failNext(2, 503);
+
+        Assert.assertEquals(1, client.getMementos(repo, "http://example.org/a").size());
+        Assert.assertEquals(2, server.getErrors());
+        Assert.assertEquals(2, client.getRequestExecutor().getRetries());
+    }
+
+    @Test
+    public void testFailedTimemapKeepsTheTimeMap() throws IOException {
+        server.putVersion(repo, "http://example.org/a", start, content("http://example.org/a", 0, 2));
+        TimeMap timeMap = client.getTimeMap(repo, "http://example.org/a");
+        server.failNext(1, 400);
+        try {
+            client.getMementos(repo, "http://example.org/a");
+            Assert.fail("failed timemap request was parsed");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("400"));
+        }
+        Assert.assertEquals(1, timeMap.count());
+        Assert.assertEquals(1, client.getMementos(repo, "http://example.org/a").size());
+    }
+
+    @Test
+    public void testAsyncTimeMapOfUnknownKeyIsEmpty() throws IOException {
+        server.putVersion(repo, "http://example.org/a", start, content("http://example.org/a", 0, 2));
+        final AtomicLong timemaps = new AtomicLong();
+        client.getRequestExecutor().metrics(new MetricsRecorder() {
+            @Override
+            public void request(MetricsRecorder.Endpoint endpoint, int status, long latencyNanos) {
+                if (endpoint == MetricsRecorder.Endpoint.TIMEMAP) {
+                    timemaps.incrementAndGet();
+                }
+            }
+        });
+        try (AsyncTailrClient async = new AsyncTailrClient(client)) {
+            Assert.assertTrue(async.getMementos(repo, "http://example.org/missing").join().isEmpty());
+            Assert.assertEquals(1, async.getMementos(repo, "http://example.org/a").join().size());
+        }
+        Assert.assertEquals(2, timemaps.get());
+    }
+
+        @Test
+    public void testUnauthorizedPutFails() throws IOException, URISyntaxException {
+        server.token("other");
+        try {
+            client.putMemento(repo, "http://example.org/a", "<a> <b> <c> .\n");
+            Assert.fail("put without valid token succeeded");
+        } catch (IOException e) {
+            Assert.assertEquals(0, server.getVersionCount(repo, "http://example.org/a"));
+        }
+    }
+
+    @Test
+    public void testSyncCountsChangedAndFailedKeys() throws IOException {
+        for (int k = 0; k < 3; k++) {
+            String key = "http://example.org/" + k;
+            server.putVersion(repo, key, start, content(key, 0, 2));
+            server.putVersion(repo, key, start.plusHours(1), content(key, 1, 2));
+        }
+        Path stateFile = folder.getRoot().toPath().resolve("state");
+        RepositorySynchronizer sync = new RepositorySynchronizer(client, repo, stateFile);
+        sync.sync((m, delta) -> {
+            if (m.getKey().endsWith("/1") || (m.getKey().endsWith("/2") && m.getSeconds() != start.getMillis() / 1000)) {
+                throw new IOException("sink failed");
+            }
+        });
+        Assert.assertEquals(2, sync.getKeysChanged());
+        Assert.assertEquals(2, sync.getKeysFailed());
+        Assert.assertEquals(3, sync.getMementosApplied());
+
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            state.load(in);
+        }
+        Assert.assertEquals(2, state.size());
+        Assert.assertEquals(start.plusHours(1).getMillis() / 1000, Long.parseLong(state.getProperty("http://example.org/0")));
+        Assert.assertEquals(start.getMillis() / 1000, Long.parseLong(state.getProperty("http://example.org/2")));
+
+        sync.sync((m, delta) -> {
+        });
+        Assert.assertEquals(2, sync.getKeysChanged());
+        Assert.assertEquals(0, sync.getKeysFailed());
+        Assert.assertEquals(3, sync.getMementosApplied());
+
+        state.setProperty("http://example.org/0", start.toString());
+        try (OutputStream out = Files.newOutputStream(stateFile)) {
+            state.store(out, null);
+        }
+        try {
+            new RepositorySynchronizer(client, repo, stateFile);
+            Assert.fail("invalid mark was loaded");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains(stateFile.toString()));
+        }
+    }
+
+    @Test
+    public void testExportReportsPartialKeys() throws IOException {
+        int triples = RepositorySnapshotExporter.BATCH_SIZE + 10;
+        server.putVersion(repo, "http://example.org/good", start, content("http://example.org/good", 0, triples));
+        server.putVersion(repo, "http://example.org/late", start, content("http://example.org/late", 0, triples) + "broken\n");
+        server.putVersion(repo, "http://example.org/early", start, "broken\n" + content("http://example.org/early", 0, 2));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RepositorySnapshotExporter exporter = new RepositorySnapshotExporter(client, repo).parallelism(2);
+        exporter.export(start, out);
+
+        Assert.assertEquals(1, exporter.getKeysExported());
+        Assert.assertEquals(2, exporter.getFailedKeys().size());
+        Assert.assertEquals(Long.valueOf(RepositorySnapshotExporter.BATCH_SIZE),
+                exporter.getPartialKeys().get("http://example.org/late"));
+        Assert.assertEquals(1, exporter.getPartialKeys().size());
+        Assert.assertEquals(triples + RepositorySnapshotExporter.BATCH_SIZE, exporter.getTriples());
+        Assert.assertFalse(new String(out.toByteArray(), StandardCharsets.UTF_8).contains("<http://example.org/early>"));
+        /* the first key failed, so a resumed export has to start from the beginning */
+        Assert.assertNull(exporter.getResumeKey());
+    }
+
+    @Test
+    public void testParallelSyncAndExport() throws IOException {
+        int keys = 40;
+        int versions = 3;
+        for (int k = 0; k < keys; k++) {
+            String key = "http://example.org/" + k;
+            for (int v = 0; v < versions; v++) {
+                server.putVersion(repo, key, start.plusHours(v), content(key, v, 10));
+            }
+        }
+        server.latency(1, 5);
+
+        DatasetGraph mirror = DatasetGraphFactory.createTxnMem();
+        RepositorySynchronizer sync = new RepositorySynchronizer(client, repo, folder.getRoot().toPath().resolve("state"))
+                .parallelism(8);
+        sync.sync(RepositorySynchronizer.datasetSink(mirror));
+
+        Assert.assertEquals(keys * versions, sync.getMementosApplied());
+        Assert.assertTrue(sync.getFailedKeys().isEmpty());
+        Assert.assertTrue(server.getMaxInFlight() > 1);
+        mirror.begin(ReadWrite.READ);
+        try {
+            Assert.assertEquals(10, mirror.getGraph(NodeFactory.createURI("http://example.org/7")).size());
+        } finally {
+            mirror.end();
+        }
+
+        long requests = server.getRequests();
+        sync.sync(RepositorySynchronizer.datasetSink(mirror));
+        Assert.assertEquals(0, sync.getMementosApplied());
+        Assert.assertTrue(server.getRequests() - requests < 2 * keys);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RepositorySnapshotExporter exporter = new RepositorySnapshotExporter(client, repo).parallelism(8);
+        exporter.export(start.plusMinutes(90), out);
+
+        Assert.assertEquals(keys, exporter.getKeysExported());
+        Assert.assertEquals(keys * 10, exporter.getTriples());
+        String nquads = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(nquads.contains("<http://example.org/3> <http://example.org/p9> \"1\" <http://example.org/3> ."));
+    }
+}
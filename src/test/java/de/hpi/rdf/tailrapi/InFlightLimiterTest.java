@@ -0,0 +1,49 @@
+package de.hpi.rdf.tailrapi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class InFlightLimiterTest {
+
+    @Test
+    public void testQueuesOverLimit() {
+        InFlightLimiter limiter = new InFlightLimiter(2);
+        List<CompletableFuture<Integer>> operations = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            final CompletableFuture<Integer> operation = new CompletableFuture<>();
+            operations.add(operation);
+            results.add(limiter.submit(() -> operation));
+        }
+        Assert.assertEquals(2, limiter.getInFlight());
+        Assert.assertEquals(3, limiter.getPending());
+
+        for (int i = 0; i < 5; i++) {
+            operations.get(i).complete(i);
+            Assert.assertTrue(limiter.getInFlight() <= 2);
+        }
+        Assert.assertEquals(0, limiter.getInFlight());
+        Assert.assertEquals(0, limiter.getPending());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(Integer.valueOf(i), results.get(i).join());
+        }
+    }
+
+    @Test
+    public void testFailureReleasesSlot() {
+        InFlightLimiter limiter = new InFlightLimiter(1);
+        CompletableFuture<Object> failed = limiter.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        Assert.assertTrue(failed.isCompletedExceptionally());
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        CompletableFuture<String> ok = limiter.submit(() -> CompletableFuture.completedFuture("ok"));
+        Assert.assertEquals("ok", ok.join());
+    }
+}
@@ -0,0 +1,40 @@
+package de.hpi.rdf.tailrapi;
+
+import de.hpi.rdf.tailrapi.MetricsRecorder.Endpoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class JmxMetricsRecorderTest {
+
+    @Test
+    public void testAttributesArePublished() throws Exception {
+        JmxMetricsRecorder recorder = new JmxMetricsRecorder("test");
+        ObjectName name = recorder.register();
+        try {
+            for (int i = 1; i <= 100; i++) {
+                recorder.request(Endpoint.TIMEMAP, i == 100 ? 500 : 200, i * 1000000L);
+            }
+            recorder.cacheHit(Endpoint.DELTA);
+            recorder.cacheMiss(Endpoint.DELTA);
+            recorder.bytesReceived(Endpoint.RESOLVE, 42);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(100L, server.getAttribute(name, "Timemap.Requests"));
+            Assert.assertEquals(1L, server.getAttribute(name, "Timemap.Errors"));
+            Assert.assertEquals(0.5, (Double) server.getAttribute(name, "Delta.CacheHitRate"), 0.001);
+            Assert.assertEquals(42L, server.getAttribute(name, "Resolve.BytesReceived"));
+            Assert.assertEquals(50.5, (Double) server.getAttribute(name, "Timemap.LatencyMeanMillis"), 0.001);
+
+            /* percentiles are bucket bounds, at most twice the exact value */
+            double p99 = (Double) server.getAttribute(name, "Timemap.LatencyP99Millis");
+            Assert.assertTrue(p99 >= 99 && p99 <= 198);
+            Assert.assertTrue(server.getMBeanInfo(name).getAttributes().length > 0);
+        } finally {
+            recorder.unregister();
+        }
+    }
+}
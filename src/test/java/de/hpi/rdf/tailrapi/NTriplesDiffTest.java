@@ -0,0 +1,75 @@
+package de.hpi.rdf.tailrapi;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class NTriplesDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String BEFORE = "# a comment\n"
+            + "<http://example.org/a> <http://example.org/p> \"1\" .\n"
+            + "<http://example.org/a>\t<http://example.org/q>  <http://example.org/b> .\n"
+            + "\n"
+            + "_:b1 <http://example.org/p> \"x y\"@en .\n";
+
+    private static final String AFTER = "<http://example.org/a> <http://example.org/q> <http://example.org/b>.\n"
+            + "_:b1 <http://example.org/p> \"x y\"@en .\n"
+            + "<http://example.org/a> <http://example.org/p> \"2\"^^<http://www.w3.org/2001/XMLSchema#int> .\n"
+            + "<http://example.org/a> <http://example.org/p> \"2\"^^<http://www.w3.org/2001/XMLSchema#int> .\n";
+
+    private Delta diff(NTriplesDiff diff, String before, String after) throws IOException {
+        Delta d = new Delta();
+        diff.diff(new StringReader(before), new StringReader(after), TailrClient.collect(d));
+        return d;
+    }
+
+    @Test
+    public void testCanonicalize() {
+        Assert.assertEquals("<a> <b> \"c d\" .", NTriplesDiff.canonicalize("  <a>\t<b>   \"c d\" . # comment"));
+        Assert.assertEquals("_:x <b> \"c \\\" .\"@en-us .", NTriplesDiff.canonicalize("_:x <b> \"c \\\" .\"@en-us."));
+        Assert.assertEquals("<a> <b> _:c .", NTriplesDiff.canonicalize("<a> <b> _:c."));
+        Assert.assertEquals("not a triple", NTriplesDiff.canonicalize(" not a triple "));
+        Assert.assertNull(NTriplesDiff.canonicalize("   # only a comment"));
+    }
+
+    @Test
+    public void testDiffInMemory() throws IOException {
+        Delta d = diff(new NTriplesDiff(), BEFORE, AFTER);
+
+        Assert.assertEquals(Collections.singletonList(
+                "<http://example.org/a> <http://example.org/p> \"2\"^^<http://www.w3.org/2001/XMLSchema#int> ."),
+                d.getAddedTriples());
+        Assert.assertEquals(Collections.singletonList("<http://example.org/a> <http://example.org/p> \"1\" ."),
+                d.getRemovedTriples());
+        Assert.assertTrue(diff(new NTriplesDiff(), BEFORE, BEFORE + "\n# changed comment\n").isEmpty());
+    }
+
+    @Test
+    public void testExternalDiffMatchesInMemoryDiff() throws IOException {
+        StringBuilder before = new StringBuilder();
+        StringBuilder after = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            before.append("<http://example.org/s> <http://example.org/p> \"").append(i).append("\" .\n");
+            after.append("<http://example.org/s> <http://example.org/p> \"").append(i + 10).append("\" .\n");
+        }
+        Delta expected = diff(new NTriplesDiff(), before.toString(), after.toString());
+        Delta external = diff(new NTriplesDiff(7, folder.getRoot().toPath()), before.toString(), after.toString());
+
+        Assert.assertEquals(10, external.getAddedTriples().size());
+        Assert.assertEquals(10, external.getRemovedTriples().size());
+        Assert.assertEquals(expected, external);
+        String[] added = external.getAddedTriples().toArray(new String[0]);
+        Arrays.sort(added);
+        Assert.assertEquals(Arrays.asList(added), external.getAddedTriples());
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+}
@@ -0,0 +1,118 @@
+package de.hpi.rdf.tailrapi;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class RepositoryKeyIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DateTime start = new DateTime(2016, 6, 1, 10, 0, DateTimeZone.UTC);
+
+    private FakeTailrServer server;
+
+    private TailrClient client;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        server = new FakeTailrServer().token("secret").pageSize(3).start();
+        client = TailrClient.builder(server.getUri()).user("fake").token("secret").connections(4, 4).build();
+        file = folder.getRoot().toPath().resolve("index").resolve("keys.idx");
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    private void put(Repository repo, String... keys) {
+        for (String key : keys) {
+            server.putVersion(repo, key, start, "<a> <b> <c> .\n");
+        }
+    }
+
+    @Test
+    public void testLookups() throws IOException {
+        Repository repo = new Repository("fake", "repo");
+        put(repo, "http://dbpedia.org/resource/B", "http://dbpedia.org/resource/Aachen", "http://dbpedia.org/resource/A",
+                "http://dbpedia.org/resource/Äpfel", "http://dbpedia.org/resource/Ab", "http://example.org/x");
+        Assert.assertNull(repo.getKeys());
+
+        RepositoryKeyIndex index = repo.getKeyIndex(client, file);
+        Assert.assertTrue(index == repo.getKeyIndex(client, file));
+        try {
+            repo.getKeyIndex(client, folder.getRoot().toPath().resolve("other"));
+            Assert.fail("index of another file was handed out");
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(Files.exists(folder.getRoot().toPath().resolve("other")));
+        }
+        Assert.assertEquals(6, index.size());
+        Assert.assertEquals("http://dbpedia.org/resource/A", repo.getKeys().get(0));
+        Assert.assertTrue(index.contains("http://dbpedia.org/resource/Ab"));
+        Assert.assertFalse(index.contains("http://dbpedia.org/resource/Abc"));
+
+        Assert.assertEquals(Arrays.asList("http://dbpedia.org/resource/A", "http://dbpedia.org/resource/Aachen",
+                "http://dbpedia.org/resource/Ab"), index.prefix("http://dbpedia.org/resource/A"));
+        Assert.assertEquals(Arrays.asList("http://dbpedia.org/resource/Äpfel"), index.prefix("http://dbpedia.org/resource/Ä"));
+        Assert.assertTrue(index.prefix("http://dbpedia.org/resource/C").isEmpty());
+        Assert.assertEquals(Arrays.asList("http://dbpedia.org/resource/Ab", "http://dbpedia.org/resource/B"),
+                index.range("http://dbpedia.org/resource/Ab", "http://dbpedia.org/resource/Äpfel"));
+        Assert.assertEquals(2, index.range("http://dbpedia.org/resource/Äpfel", null).size());
+        Assert.assertTrue(index.range("http://z", "http://a").isEmpty());
+    }
+
+    @Test
+    public void testStoredIndexIsOpenedWithoutRequests() throws IOException {
+        put(new Repository("fake", "repo"), "http://example.org/1", "http://example.org/2", "http://example.org/3");
+        new Repository("fake", "repo").getKeyIndex(client, file);
+
+        long requests = server.getRequests();
+        RepositoryKeyIndex index = new Repository("fake", "repo").getKeyIndex(client, file);
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals(requests, server.getRequests());
+
+        Assert.assertEquals(3, RepositoryKeyIndex.open(client, new Repository("fake", "repo"), file).size());
+        Assert.assertEquals(requests, server.getRequests());
+
+        Files.write(file, new byte[]{1, 2, 3});
+        Assert.assertEquals(3, new Repository("fake", "repo").getKeyIndex(client, file).size());
+        Assert.assertTrue(server.getRequests() > requests);
+    }
+
+    @Test
+    public void testIncrementalRefresh() throws IOException {
+        Repository repo = new Repository("fake", "repo");
+        put(repo, "http://example.org/01", "http://example.org/02", "http://example.org/03", "http://example.org/04");
+        RepositoryKeyIndex index = repo.getKeyIndex(client, file);
+        Assert.assertFalse(index.refresh());
+
+        put(repo, "http://example.org/05", "http://example.org/06", "http://example.org/07", "http://example.org/08");
+        long requests = server.getRequests();
+        Assert.assertTrue(index.refresh());
+        Assert.assertEquals(8, index.size());
+        Assert.assertEquals("http://example.org/08", index.keys().get(7));
+        Assert.assertTrue(server.getRequests() - requests < 4 + RepositoryKeyIterator.DEFAULT_PREFETCH);
+
+        put(repo, "http://example.org/00");
+        Assert.assertTrue(index.refresh());
+        Assert.assertEquals(9, index.size());
+        Assert.assertEquals("http://example.org/00", index.keys().get(0));
+        Assert.assertFalse(index.refresh());
+    }
+}
@@ -0,0 +1,92 @@
+package de.hpi.rdf.tailrapi;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestExecutorTest {
+
+    private HttpServer server;
+
+    private ConnectionPool pool;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /* answers the first calls with the given status, then with 200 */
+    private void failFirst(final int failures, final int status) {
+        server.createContext("/", exchange -> {
+            int call = calls.incrementAndGet();
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(call <= failures ? status : 200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        pool = new ConnectionPool();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        pool.close();
+    }
+
+    @Test
+    public void testReadsAreRetried() throws IOException {
+        failFirst(2, 503);
+        RequestExecutor executor = new RequestExecutor(pool).retries(3, 1, 5);
+
+        try (CloseableHttpResponse response = executor.execute(new HttpGet(url()))) {
+            Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        }
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals(2, executor.getRetries());
+        Assert.assertEquals(2, executor.getThrottled());
+        Assert.assertEquals(0, executor.getInFlight());
+    }
+
+    @Test
+    public void testPutIsNotRetriedAfterBadGateway() throws IOException {
+        failFirst(1, 502);
+        RequestExecutor executor = new RequestExecutor(pool).retries(3, 1, 5);
+        HttpPut put = new HttpPut(url());
+        put.setEntity(new StringEntity("<a> <b> <c> ."));
+
+        try (CloseableHttpResponse response = executor.execute(put)) {
+            Assert.assertEquals(502, response.getStatusLine().getStatusCode());
+        }
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, executor.getFailures());
+    }
+
+    @Test
+    public void testOverloadHalvesConcurrency() throws IOException {
+        failFirst(1, 500);
+        RequestExecutor executor = new RequestExecutor(pool).concurrency(1, 16);
+        double before = executor.getConcurrencyLimit();
+
+        executor.execute(new HttpGet(url())).close();
+        Assert.assertEquals(before / 2, executor.getConcurrencyLimit(), 0.001);
+
+        executor.execute(new HttpGet(url())).close();
+        Assert.assertTrue(executor.getConcurrencyLimit() > before / 2);
+    }
+}
@@ -0,0 +1,102 @@
+package de.hpi.rdf.tailrapi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    private final AtomicInteger joined = new AtomicInteger();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneRequest() throws Exception {
+        final SingleFlight<String, List<String>> flights = new SingleFlight<>(ArrayList::new, joined::incrementAndGet);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(threads.submit(() -> flights.execute("key", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    List<String> result = new ArrayList<>();
+                    result.add("value");
+                    return result;
+                })));
+            }
+            while (joined.get() < 3) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            Set<List<String>> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<List<String>> result : results) {
+                List<String> value = result.get(10, TimeUnit.SECONDS);
+                Assert.assertEquals(Collections.singletonList("value"), value);
+                instances.add(value);
+            }
+            Assert.assertEquals(1, calls.get());
+            Assert.assertEquals(4, instances.size());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotKept() throws Exception {
+        final SingleFlight<String, String> flights = new SingleFlight<>(joined::incrementAndGet);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(threads.submit(() -> flights.execute("key", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    throw new IOException("down");
+                })));
+            }
+            while (joined.get() < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    Assert.fail("the failure was not shared");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+            Assert.assertEquals(1, calls.get());
+            Assert.assertEquals("up", flights.execute("key", () -> "up"));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.hpi.rdf.tailrapi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TailrJsonTest {
+
+    private static InputStream json(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseTimemap() throws IOException {
+        String timemap = "{\"original_uri\": \"http://example.org\", \"timegate_uri\": \"x\", "
+                + "\"mementos\": {\"first\": {\"datetime\": \"2016-06-01T10:00:00\"}, "
+                + "\"list\": [{\"datetime\": \"2016-06-02T10:00:00\", \"uri\": \"a\", \"nested\": {\"datetime\": \"no\"}}, "
+                + "{\"uri\": \"b\", \"datetime\": \"2016-06-01T10:00:00\"}]}}";
+        List<String> datetimes = new ArrayList<>();
+        TailrJson.parseTimemap(json(timemap), datetimes::add);
+
+        Assert.assertEquals(Arrays.asList("2016-06-02T10:00:00", "2016-06-01T10:00:00"), datetimes);
+    }
+
+    @Test
+    public void testParseEmptyTimemap() throws IOException {
+        List<String> datetimes = new ArrayList<>();
+        TailrJson.parseTimemap(json("{\"original_uri\": \"http://example.org\"}"), datetimes::add);
+
+        Assert.assertTrue(datetimes.isEmpty());
+    }
+
+    @Test
+    public void testParseDelta() throws IOException {
+        String delta = "{\"info\": {\"a\": [1, 2]}, \"added\": [\"<a> <b> <c> .\", \"<a> <b> \\\"d\\\" .\"], "
+                + "\"deleted\": [\"_:b1 <b> <c> .\"]}";
+        Delta d = new Delta();
+        TailrJson.parseDelta(json(delta), TailrClient.collect(d));
+
+        Assert.assertEquals(Arrays.asList("<a> <b> <c> .", "<a> <b> \"d\" ."), d.getAddedTriples());
+        Assert.assertEquals(Arrays.asList("_:b1 <b> <c> ."), d.getRemovedTriples());
+    }
+}
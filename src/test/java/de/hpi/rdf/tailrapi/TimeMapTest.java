@@ -0,0 +1,88 @@
+package de.hpi.rdf.tailrapi;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimeMapTest {
+
+    private final Repository repo = new Repository("user", "repo");
+
+    private final DateTime start = new DateTime(2016, 6, 1, 10, 0);
+
+    private TimeMap timeMap(int... hours) throws UnsupportedEncodingException {
+        long[] seconds = new long[hours.length];
+        for (int i = 0; i < hours.length; i++) {
+            seconds[i] = DatetimeCodec.of(start.plusHours(hours[i]));
+        }
+        return new TimeMap(null, repo, "http://example.org", seconds);
+    }
+
+    private static List<DateTime> dateTimes(List<Memento> mementos) {
+        List<DateTime> dateTimes = new ArrayList<>();
+        for (Memento m : mementos) {
+            dateTimes.add(m.getDateTime());
+        }
+        return dateTimes;
+    }
+
+    @Test
+    public void testPointInTimeLookups() throws UnsupportedEncodingException {
+        TimeMap timeMap = timeMap(4, 2, 0);
+
+        Assert.assertEquals(3, timeMap.count());
+        Assert.assertEquals(start.plusHours(4), timeMap.latest().getDateTime());
+        Assert.assertEquals(start.plusHours(4), timeMap.get(0).getDateTime());
+        Assert.assertNull(timeMap.floor(start.minusSeconds(1)));
+        Assert.assertEquals(start, timeMap.floor(start).getDateTime());
+        Assert.assertEquals(start.plusHours(2), timeMap.floor(start.plusHours(3)).getDateTime());
+        Assert.assertEquals(start.plusHours(4), timeMap.floor(start.plusYears(1)).getDateTime());
+        Assert.assertEquals(start.plusHours(2), timeMap.ceiling(start.plusMillis(1)).getDateTime());
+        Assert.assertEquals(start.plusHours(2), timeMap.ceiling(start.plusHours(2)).getDateTime());
+        Assert.assertNull(timeMap.ceiling(start.plusHours(4).plusSeconds(1)));
+
+        DateTime utc = start.plusHours(2).withZone(DateTimeZone.forOffsetHours(-7));
+        Assert.assertEquals(start.plusHours(2), timeMap.floor(utc).getDateTime());
+        Assert.assertNull(timeMap(new int[0]).latest());
+    }
+
+    @Test
+    public void testRange() throws UnsupportedEncodingException {
+        TimeMap timeMap = timeMap(0, 1, 2, 3, 4);
+
+        Assert.assertEquals(dateTimes(timeMap.subList(1, 4)), dateTimes(timeMap.range(start.plusHours(1), start.plusHours(3))));
+        Assert.assertEquals(2, timeMap.range(start.plusMinutes(30), start.plusMinutes(150)).count());
+        Assert.assertEquals(5, timeMap.range(null, null).count());
+        Assert.assertEquals(2, timeMap.range(start.plusHours(3), null).count());
+        Assert.assertEquals(0, timeMap.range(start.plusMinutes(10), start.plusMinutes(20)).count());
+        Assert.assertEquals(0, timeMap.range(start.plusHours(3), start.plusHours(1)).count());
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws UnsupportedEncodingException {
+        TimeMap timeMap = timeMap(0, 2);
+        List<Memento> before = new ArrayList<>(timeMap);
+
+        timeMap.add(DatetimeCodec.of(start.plusHours(1)));
+        timeMap.add(DatetimeCodec.of(start.plusHours(1)));
+        timeMap.add(DatetimeCodec.of(start.plusHours(3)));
+        Assert.assertEquals(4, timeMap.count());
+        Assert.assertEquals(start.plusHours(3), timeMap.latest().getDateTime());
+        Assert.assertEquals(start.plusHours(1), timeMap.floor(start.plusMinutes(90)).getDateTime());
+
+        timeMap.remove(DatetimeCodec.of(start.plusHours(3)));
+        timeMap.remove(DatetimeCodec.of(start.plusHours(5)));
+        Assert.assertEquals(3, timeMap.count());
+        Assert.assertEquals(start.plusHours(2), timeMap.latest().getDateTime());
+        Assert.assertEquals(2, before.size());
+
+        timeMap.reset(new long[]{DatetimeCodec.of(start.plusHours(7)), DatetimeCodec.of(start), DatetimeCodec.of(start)});
+        Assert.assertEquals(2, timeMap.count());
+        Assert.assertEquals(start.plusHours(7), timeMap.get(0).getDateTime());
+    }
+}